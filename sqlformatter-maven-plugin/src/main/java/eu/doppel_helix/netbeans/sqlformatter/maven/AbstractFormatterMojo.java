@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2014 Matthias Bläsing <mblaesing@doppel-helix.eu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter.maven;
+
+import eu.doppel_helix.netbeans.sqlformatter.Formatter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Common base of the format and check goals: collects the SQL files, skips
+ * the ones recorded in the manifest as unchanged and formats the rest in
+ * parallel.
+ */
+abstract class AbstractFormatterMojo extends AbstractMojo {
+
+    /**
+     * Directory that is searched recursively for SQL files.
+     */
+    @Parameter(property = "sqlformatter.directory", defaultValue = "${project.basedir}/src")
+    private File directory;
+
+    /**
+     * File extension of the SQL files (case insensitive).
+     */
+    @Parameter(property = "sqlformatter.extension", defaultValue = ".sql")
+    private String extension;
+
+    @Parameter(property = "sqlformatter.encoding", defaultValue = "${project.build.sourceEncoding}")
+    private String encoding;
+
+    /**
+     * Number of columns a indent level is wide.
+     */
+    @Parameter(property = "sqlformatter.indentSize", defaultValue = "4")
+    private int indentSize;
+
+    @Parameter(property = "sqlformatter.expandTabs", defaultValue = "true")
+    private boolean expandTabs;
+
+    @Parameter(property = "sqlformatter.tabSize", defaultValue = "8")
+    private int tabSize;
+
+    /**
+     * Number of files processed in parallel, 0 uses one thread per processor.
+     */
+    @Parameter(property = "sqlformatter.threads", defaultValue = "0")
+    private int threads;
+
+    /**
+     * Location of the manifest of already formatted files.
+     */
+    @Parameter(property = "sqlformatter.manifest",
+            defaultValue = "${project.build.directory}/sqlformatter-manifest.properties")
+    private File manifest;
+
+    @Parameter(property = "sqlformatter.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    private String pluginVersion;
+
+    /**
+     * Handle a file whose content is not known to be formatted.
+     *
+     * @return {@code true} if the file is formatted after this call
+     */
+    protected abstract boolean process(Path file, String content, String formatted,
+            Charset charset) throws IOException;
+
+    /**
+     * Called after all files were processed.
+     *
+     * @param rejected files that are not formatted after processing
+     */
+    protected abstract void finish(List<Path> rejected) throws MojoFailureException;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping SQL formatter");
+            return;
+        }
+        if (!directory.isDirectory()) {
+            getLog().debug("No SQL directory " + directory);
+            return;
+        }
+
+        final Charset charset = Charset.forName(encoding == null ? "UTF-8" : encoding);
+        final Path basePath = directory.toPath();
+        Path manifestPath = manifest.toPath();
+        String formatterBuild;
+        try {
+            formatterBuild = formatterBuild();
+        } catch (IOException | URISyntaxException ex) {
+            throw new MojoExecutionException("Failed to identify the formatter build", ex);
+        }
+        final FormatManifest formatManifest = FormatManifest.load(manifestPath, FormatManifest.hash(
+                pluginVersion + ":" + formatterBuild + ":" + indentSize + ":" + expandTabs
+                + ":" + tabSize + ":" + charset.name()));
+
+        List<Path> files;
+        try {
+            files = collectFiles(basePath);
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Failed to collect SQL files in " + directory, ex);
+        }
+
+        Set<String> known = new HashSet<>(files.size() * 2);
+        List<Path> candidates = new ArrayList<>();
+        try {
+            for (Path file : files) {
+                String key = key(basePath, file);
+                known.add(key);
+                if (!formatManifest.isUpToDate(key,
+                        Files.size(file), Files.getLastModifiedTime(file).toMillis())) {
+                    candidates.add(file);
+                }
+            }
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Failed to read SQL file attributes", ex);
+        }
+        formatManifest.retain(known);
+
+        getLog().info(String.format("SQL files: %d, unchanged since last run: %d",
+                files.size(), files.size() - candidates.size()));
+
+        List<Path> rejected = new ArrayList<>();
+        if (!candidates.isEmpty()) {
+            int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.max(1, Math.min(threadCount, candidates.size())));
+            try {
+                List<Future<Result>> futures = new ArrayList<>(candidates.size());
+                for (final Path file : candidates) {
+                    final String key = key(basePath, file);
+                    futures.add(executor.submit(new Callable<Result>() {
+                        @Override
+                        public Result call() throws Exception {
+                            return processFile(file, key, formatManifest, charset);
+                        }
+                    }));
+                }
+                for (int i = 0; i < candidates.size(); i++) {
+                    Path file = candidates.get(i);
+                    String key = key(basePath, file);
+                    Result result = futures.get(i).get();
+                    if (result.formatted) {
+                        formatManifest.record(key, result.size, result.lastModified, result.hash);
+                    } else {
+                        formatManifest.remove(key);
+                        rejected.add(file);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while formatting SQL files", ex);
+            } catch (ExecutionException ex) {
+                throw new MojoExecutionException("Failed to format SQL file", ex.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        try {
+            formatManifest.store(manifestPath);
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Failed to write manifest " + manifest, ex);
+        }
+
+        finish(rejected);
+    }
+
+    private Result processFile(Path file, String key, FormatManifest formatManifest, Charset charset) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        String hash = FormatManifest.hash(data);
+        // Only the modification time changed, content is still formatted
+        if (formatManifest.hasHash(key, hash)) {
+            return new Result(true, data.length, Files.getLastModifiedTime(file).toMillis(), hash);
+        }
+        String content = new String(data, charset);
+        boolean formatted = process(file, content,
+                Formatter.format(content, indentSize, expandTabs, tabSize), charset);
+        // Record the state after processing, the file might have been rewritten
+        data = Files.readAllBytes(file);
+        return new Result(formatted, data.length,
+                Files.getLastModifiedTime(file).toMillis(), FormatManifest.hash(data));
+    }
+
+    /**
+     * Identify the build of the formatter, snapshot builds change without a
+     * change of the version. For a jar this is its content hash, for a
+     * directory of classes (inside a reactor build) name, size and
+     * modification time of the class files.
+     */
+    private static String formatterBuild() throws IOException, URISyntaxException {
+        CodeSource codeSource = Formatter.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) {
+            return "";
+        }
+        final Path location = Paths.get(codeSource.getLocation().toURI());
+        if (Files.isRegularFile(location)) {
+            return FormatManifest.hash(Files.readAllBytes(location));
+        }
+        final List<String> entries = new ArrayList<>();
+        Files.walkFileTree(location, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                entries.add(key(location, file) + ":" + attrs.size() + ":" + attrs.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(entries);
+        return FormatManifest.hash(entries.toString());
+    }
+
+    private List<Path> collectFiles(Path basePath) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        final String suffix = extension.toLowerCase(Locale.ENGLISH);
+        Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()
+                        && file.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(suffix)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private static String key(Path basePath, Path file) {
+        return basePath.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private static final class Result {
+        final boolean formatted;
+        final long size;
+        final long lastModified;
+        final String hash;
+
+        Result(boolean formatted, long size, long lastModified, String hash) {
+            this.formatted = formatted;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
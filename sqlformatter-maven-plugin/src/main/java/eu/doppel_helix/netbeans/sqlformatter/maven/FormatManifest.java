@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2014 Matthias Bläsing <mblaesing@doppel-helix.eu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Records which files are known to be formatted. Each entry holds size,
+ * modification time and content hash of a file, so that unchanged files can
+ * be skipped without reading them. The manifest is only valid for the
+ * formatter settings it was created with.
+ */
+class FormatManifest {
+    private static final String SETTINGS_KEY = "@settings";
+
+    private final Properties entries;
+    private boolean modified;
+
+    private FormatManifest(Properties entries, boolean modified) {
+        this.entries = entries;
+        this.modified = modified;
+    }
+
+    /**
+     * Load the manifest - if it does not exist, can't be read or was created
+     * with different settings, an empty manifest is returned.
+     */
+    static FormatManifest load(Path file, String settingsHash) {
+        Properties entries = new Properties();
+        if (Files.isRegularFile(file)) {
+            try (InputStream is = Files.newInputStream(file)) {
+                entries.load(is);
+            } catch (IOException | IllegalArgumentException ex) {
+                entries.clear();
+            }
+        }
+        if (!settingsHash.equals(entries.getProperty(SETTINGS_KEY))) {
+            entries.clear();
+            entries.setProperty(SETTINGS_KEY, settingsHash);
+            return new FormatManifest(entries, true);
+        }
+        return new FormatManifest(entries, false);
+    }
+
+    /**
+     * @return {@code true} if size and modification time match the recorded
+     *         state - the file does not need to be read in that case
+     */
+    boolean isUpToDate(String path, long size, long lastModified) {
+        String entry = entries.getProperty(path);
+        return entry != null && entry.startsWith(size + ":" + lastModified + ":");
+    }
+
+    /**
+     * @return {@code true} if the recorded content hash matches
+     */
+    boolean hasHash(String path, String hash) {
+        String entry = entries.getProperty(path);
+        return entry != null && entry.endsWith(":" + hash);
+    }
+
+    void record(String path, long size, long lastModified, String hash) {
+        String entry = size + ":" + lastModified + ":" + hash;
+        if (!entry.equals(entries.setProperty(path, entry))) {
+            modified = true;
+        }
+    }
+
+    void remove(String path) {
+        if (entries.remove(path) != null) {
+            modified = true;
+        }
+    }
+
+    /**
+     * Drop entries of files, that are not part of the current run.
+     */
+    void retain(Set<String> paths) {
+        for (String path : entries.stringPropertyNames()) {
+            if (!SETTINGS_KEY.equals(path) && !paths.contains(path)) {
+                remove(path);
+            }
+        }
+    }
+
+    /**
+     * Write the manifest, if it was modified since it was loaded.
+     */
+    void store(Path file) throws IOException {
+        if (!modified) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        try (OutputStream os = Files.newOutputStream(file)) {
+            entries.store(os, "SQL Formatter manifest");
+        }
+        modified = false;
+    }
+
+    static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String hash(String data) {
+        return hash(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2014 Matthias Bläsing <mblaesing@doppel-helix.eu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter.maven;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AbstractFormatterMojoTest {
+    private static final String UNFORMATTED = "select a, b from t where x = 1;\n";
+
+    private Path directory;
+    private Path manifest;
+
+    @Before
+    public void setUp() throws IOException {
+        Path base = Files.createTempDirectory("sqlformatter");
+        directory = base.resolve("src");
+        Files.createDirectories(directory.resolve("sql"));
+        manifest = base.resolve("target").resolve("sqlformatter-manifest.properties");
+    }
+
+    @Test
+    public void testFormatThenSkip() throws Exception {
+        Path file = write("sql/a.sql", UNFORMATTED);
+
+        RecordingLog log = execute(new FormatMojo());
+        String formatted = read(file);
+        assertFalse(UNFORMATTED.equals(formatted));
+        assertTrue(formatted.endsWith(";\n"));
+        assertTrue(log.contains("SQL files: 1, unchanged since last run: 0"));
+        assertTrue(log.contains("Formatting " + file));
+        assertTrue(Files.isRegularFile(manifest));
+
+        // The second run finds the file in the manifest
+        log = execute(new FormatMojo());
+        assertEquals(formatted, read(file));
+        assertTrue(log.contains("SQL files: 1, unchanged since last run: 1"));
+        assertFalse(log.contains("Formatting " + file));
+
+        execute(new CheckMojo());
+    }
+
+    @Test
+    public void testCheckFails() throws Exception {
+        Path file = write("sql/a.sql", UNFORMATTED);
+
+        for (int i = 0; i < 2; i++) {
+            // Rejected files are not recorded, so the check fails again
+            RecordingLog log = new RecordingLog();
+            try {
+                execute(new CheckMojo(), log);
+                fail("Unformatted file was accepted");
+            } catch (MojoFailureException ex) {
+                assertTrue(log.contains("Not formatted: " + file));
+            }
+            assertEquals(UNFORMATTED, read(file));
+        }
+    }
+
+    @Test
+    public void testUnchangedFilesAreNotRead() throws Exception {
+        Path file = write("sql/a.sql", UNFORMATTED);
+        execute(new FormatMojo());
+        String formatted = read(file);
+        FileTime lastModified = Files.getLastModifiedTime(file);
+
+        // Same size and modification time - the file is trusted without
+        // reading it
+        String unformatted = formatted.replace('\n', ' ');
+        write("sql/a.sql", unformatted);
+        Files.setLastModifiedTime(file, lastModified);
+        RecordingLog log = execute(new CheckMojo());
+        assertTrue(log.contains("SQL files: 1, unchanged since last run: 1"));
+
+        // A new modification time makes the check read the file
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 2000));
+        try {
+            execute(new CheckMojo());
+            fail("Unformatted file was accepted");
+        } catch (MojoFailureException ex) {
+            // expected
+        }
+    }
+
+    private RecordingLog execute(AbstractFormatterMojo mojo) throws Exception {
+        RecordingLog log = new RecordingLog();
+        execute(mojo, log);
+        return log;
+    }
+
+    private void execute(AbstractFormatterMojo mojo, RecordingLog log) throws Exception {
+        set(mojo, "directory", directory.toFile());
+        set(mojo, "extension", ".sql");
+        set(mojo, "encoding", "UTF-8");
+        set(mojo, "indentSize", 4);
+        set(mojo, "expandTabs", true);
+        set(mojo, "tabSize", 8);
+        set(mojo, "threads", 2);
+        set(mojo, "manifest", manifest.toFile());
+        set(mojo, "skip", false);
+        set(mojo, "pluginVersion", "test");
+        mojo.setLog(log);
+        mojo.execute();
+    }
+
+    private static void set(AbstractFormatterMojo mojo, String name, Object value) throws Exception {
+        Field field = AbstractFormatterMojo.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingLog extends SystemStreamLog {
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void info(CharSequence content) {
+            messages.add(content.toString());
+        }
+
+        @Override
+        public void error(CharSequence content) {
+            messages.add(content.toString());
+        }
+
+        boolean contains(String message) {
+            return messages.contains(message);
+        }
+    }
+}
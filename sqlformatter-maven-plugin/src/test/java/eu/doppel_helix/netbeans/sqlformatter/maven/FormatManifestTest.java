@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2014 Matthias Bläsing <mblaesing@doppel-helix.eu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package eu.doppel_helix.netbeans.sqlformatter.maven;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class FormatManifestTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("sqlformatter");
+        Path file = dir.resolve("target").resolve("manifest.properties");
+        String hash = FormatManifest.hash("select 1");
+
+        FormatManifest manifest = FormatManifest.load(file, "settings");
+        manifest.record("a/b.sql", 8, 1000, hash);
+        manifest.store(file);
+        assertTrue(Files.isRegularFile(file));
+
+        manifest = FormatManifest.load(file, "settings");
+        assertTrue(manifest.isUpToDate("a/b.sql", 8, 1000));
+        assertFalse(manifest.isUpToDate("a/b.sql", 8, 1001));
+        assertFalse(manifest.isUpToDate("a/b.sql", 9, 1000));
+        assertFalse(manifest.isUpToDate("c.sql", 8, 1000));
+        assertTrue(manifest.hasHash("a/b.sql", hash));
+
+        // Unmodified manifests are not written again
+        Files.delete(file);
+        manifest.store(file);
+        assertFalse(Files.exists(file));
+
+        // Entries of removed files are dropped
+        manifest.retain(Collections.<String>emptySet());
+        assertFalse(manifest.isUpToDate("a/b.sql", 8, 1000));
+        manifest.store(file);
+        assertTrue(Files.isRegularFile(file));
+    }
+
+    @Test
+    public void testSettingsChangeInvalidates() throws IOException {
+        Path dir = Files.createTempDirectory("sqlformatter");
+        Path file = dir.resolve("manifest.properties");
+
+        FormatManifest manifest = FormatManifest.load(file, "settings");
+        manifest.record("b.sql", 8, 1000, FormatManifest.hash("select 1"));
+        manifest.store(file);
+
+        manifest = FormatManifest.load(file, "other settings");
+        assertFalse(manifest.isUpToDate("b.sql", 8, 1000));
+    }
+}
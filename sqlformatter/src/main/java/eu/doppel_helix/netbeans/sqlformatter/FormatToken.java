@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2014 Matthias Bläsing <mblaesing@doppel-helix.eu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package eu.doppel_helix.netbeans.sqlformatter;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.netbeans.api.lexer.Token;
+
+/**
+ * Token as seen by the formatting algorithm. The tokens are created from the
+ * token sequence of the NetBeans lexer or, without a registered SQL language,
+ * by the {@link SQLTokenizer}.
+ */
+final class FormatToken {
+    private final SQLTokenId id;
+    private final String text;
+
+    FormatToken(SQLTokenId id, String text) {
+        this.id = id;
+        this.text = text;
+    }
+
+    /**
+     * @return the id of the token or {@code null} for a token id, that is
+     *         not known to the formatter
+     */
+    SQLTokenId id() {
+        return id;
+    }
+
+    String text() {
+        return text;
+    }
+
+    static List<FormatToken> fromLexer(List<Token> tokens) {
+        List<FormatToken> result = new ArrayList<>(tokens.size());
+        for (Token t : tokens) {
+            result.add(new FormatToken(SQLTokenId.valueOf(t.id()), t.text().toString()));
+        }
+        return result;
+    }
+
+    static List<FormatToken> tokenize(CharSequence sql) {
+        List<FormatToken> result = new ArrayList<>();
+        SQLTokenizer tokenizer = new SQLTokenizer(sql);
+        while (tokenizer.moveNext()) {
+            result.add(new FormatToken(tokenizer.id(), tokenizer.text().toString()));
+        }
+        return result;
+    }
+}
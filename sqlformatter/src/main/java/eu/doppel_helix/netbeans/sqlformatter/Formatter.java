@@ -37,6 +37,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import org.netbeans.api.lexer.Language;
@@ -47,9 +50,38 @@ import org.netbeans.modules.editor.indent.api.IndentUtils;
 import org.netbeans.modules.editor.indent.spi.Context;
 import org.netbeans.modules.editor.indent.spi.ExtraLock;
 import org.netbeans.modules.editor.indent.spi.ReformatTask;
+import org.openide.awt.StatusDisplayer;
+import org.openide.util.NbBundle;
 
 public class Formatter implements ReformatTask {
-    static Language sqlLanguage = Language.find("text/x-sql");
+    // Looked up on first use - short lived command line runs should not pay
+    // for the language lookup at class initialization
+    static volatile Language sqlLanguage;
+
+    // Documents larger than this (in characters) are formatted statement by
+    // statement, without copying or lexing the whole document
+    static final int LARGE_DOCUMENT_THRESHOLD = Integer.getInteger(
+            "eu.doppel_helix.netbeans.sqlformatter.largeDocumentThreshold",
+            512 * 1024);
+    // Time budgets in milliseconds - the first limits a single statement in
+    // the statement-local strategy, the second a complete reformat run
+    static final long STATEMENT_TIME_BUDGET = Long.getLong(
+            "eu.doppel_helix.netbeans.sqlformatter.statementTimeBudget",
+            2000L);
+    static final long REFORMAT_TIME_BUDGET = Long.getLong(
+            "eu.doppel_helix.netbeans.sqlformatter.reformatTimeBudget",
+            10000L);
+    private static final int MAX_REPORTED_SKIPS = 10;
+    
+    static Language sqlLanguage() {
+        Language language = sqlLanguage;
+        if (language == null) {
+            language = Language.find("text/x-sql");
+            sqlLanguage = language;
+        }
+        return language;
+    }
+    
     public static class Factory implements ReformatTask.Factory {
 
         @Override
@@ -69,6 +101,24 @@ public class Formatter implements ReformatTask {
         return null;
     }
     
+    /**
+     * Format the content of a SQL file without the NetBeans lexer - the text
+     * is split by the {@link SQLTokenizer}, which produces the same tokens.
+     * Blank content is returned unchanged and the final line break of the
+     * file is kept.
+     */
+    public static String format(String content, int levelSize, boolean expandTabs, int tabSize) {
+        if (content.trim().isEmpty()) {
+            return content;
+        }
+        String formatted = new Formatter(null).formatTokens(FormatToken.tokenize(content),
+                levelSize, expandTabs, tabSize, Long.MAX_VALUE);
+        if (content.endsWith("\n")) {
+            formatted += content.endsWith("\r\n") ? "\r\n" : "\n";
+        }
+        return formatted;
+    }
+
     private static final List<List<String>> reserved_newline = Arrays.asList(
             Arrays.asList("LEFT", "OUTER", "JOIN"),
             Arrays.asList("RIGHT", "OUTER", "JOIN"),
@@ -108,12 +158,27 @@ public class Formatter implements ReformatTask {
     public void reformat() throws BadLocationException {
         Document d = context.document();
         
+        // Only one indent region is supported:
+        int startSelection = context.indentRegions().get(0).getStartOffset();
+        int endSelection = context.indentRegions().get(0).getEndOffset();
+        
+        if (d.getLength() > LARGE_DOCUMENT_THRESHOLD) {
+            List<String> skipped = reformatStatementLocal(d, startSelection, endSelection,
+                    IndentUtils.indentLevelSize(d),
+                    IndentUtils.isExpandTabs(d),
+                    IndentUtils.tabSize(d),
+                    TimeUnit.MILLISECONDS.toNanos(STATEMENT_TIME_BUDGET),
+                    TimeUnit.MILLISECONDS.toNanos(REFORMAT_TIME_BUDGET));
+            reportSkipped(skipped);
+            return;
+        }
+        
         int startPos = d.getStartPosition().getOffset();
         int endPos = d.getEndPosition().getOffset();
         
         String baseText = d.getText(startPos, endPos - 1);
         
-        TokenHierarchy th = TokenHierarchy.create(baseText, sqlLanguage);
+        TokenHierarchy th = TokenHierarchy.create(baseText, sqlLanguage());
         
         TokenSequence ts = th.tokenSequence();
         
@@ -123,10 +188,6 @@ public class Formatter implements ReformatTask {
             tokens.add(ts.token());
         }
         
-        // Only one indent region is supported:
-        int startSelection = context.indentRegions().get(0).getStartOffset();
-        int endSelection = context.indentRegions().get(0).getEndOffset();
-        
         int startIdx = 0;
         int endIdx = tokens.size() - 1;
         
@@ -160,20 +221,207 @@ public class Formatter implements ReformatTask {
                 tokens.subList(startIdx, endIdx + 1), 
                 IndentUtils.indentLevelSize(d),
                 IndentUtils.isExpandTabs(d),
-                IndentUtils.tabSize(d));
+                IndentUtils.tabSize(d),
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REFORMAT_TIME_BUDGET));
+        
+        if (newSQL == null) {
+            reportSkipped(Collections.singletonList(describe(
+                    tokenStartPos, tokenEndPos, "time budget exceeded")));
+            return;
+        }
         
         d.remove(tokenStartPos, tokenEndPos - tokenStartPos);
         d.insertString(tokenStartPos, newSQL, null);
     }
 
+    /**
+     * Format the statements in the given range of the document one by one.
+     * Statement boundaries are taken from the token hierarchy of the
+     * document, only the text of the statements is read and lexed again.
+     *
+     * <p>Statements that are too large or exceed their time budget are left
+     * unchanged. Once the budget for the whole run is exhausted, the
+     * remaining statements are skipped.</p>
+     *
+     * @return descriptions of the skipped statements
+     */
+    List<String> reformatStatementLocal(Document d, int startSelection, int endSelection,
+            int levelSize, boolean expandTabs, int tabSize,
+            long statementBudget, long reformatBudget) throws BadLocationException {
+        List<String> skipped = new ArrayList<>();
+        long reformatDeadline = System.nanoTime() + reformatBudget;
+        
+        List<int[]> statements = statementRanges(d, startSelection, endSelection);
+        
+        int delta = 0;
+        for (int s = 0; s < statements.size(); s++) {
+            int statementStart = statements.get(s)[0] + delta;
+            int statementEnd = statements.get(s)[1] + delta;
+            
+            if (System.nanoTime() - reformatDeadline >= 0) {
+                skipped.add(describe(statementStart,
+                        statements.get(statements.size() - 1)[1] + delta,
+                        "reformat time budget exceeded"));
+                break;
+            }
+            
+            if (statementEnd - statementStart > LARGE_DOCUMENT_THRESHOLD) {
+                skipped.add(describe(statementStart, statementEnd, "statement too large"));
+                continue;
+            }
+            
+            String text = d.getText(statementStart, statementEnd - statementStart);
+            
+            TokenHierarchy th = TokenHierarchy.create(text, sqlLanguage());
+            
+            TokenSequence ts = th.tokenSequence();
+            
+            List<Token> tokens = new ArrayList<>(ts.tokenCount());
+            
+            int firstIdx = -1;
+            int lastIdx = -1;
+            while(ts.moveNext()) {
+                Token t = ts.token();
+                if(! SQLTokenId.WHITESPACE.matches(t.id())) {
+                    if(firstIdx < 0) {
+                        firstIdx = tokens.size();
+                    }
+                    lastIdx = tokens.size();
+                }
+                tokens.add(t);
+            }
+            
+            if (firstIdx < 0) {
+                continue;
+            }
+            
+            int tokenStartPos = tokens.get(firstIdx).offset(th);
+            int tokenEndPos = tokens.get(lastIdx).offset(th) + tokens.get(lastIdx).length();
+            
+            String newSQL = formatSQL(
+                    tokens.subList(firstIdx, lastIdx + 1),
+                    levelSize,
+                    expandTabs,
+                    tabSize,
+                    Math.min(System.nanoTime() + statementBudget, reformatDeadline));
+            
+            if (newSQL == null) {
+                skipped.add(describe(statementStart, statementEnd, "time budget exceeded"));
+                continue;
+            }
+            
+            if (! newSQL.contentEquals(text.subSequence(tokenStartPos, tokenEndPos))) {
+                d.remove(statementStart + tokenStartPos, tokenEndPos - tokenStartPos);
+                d.insertString(statementStart + tokenStartPos, newSQL, null);
+                delta += newSQL.length() - (tokenEndPos - tokenStartPos);
+            }
+        }
+        
+        return skipped;
+    }
+    
+    /**
+     * Split the document into the statements, that overlap the given range.
+     * The token hierarchy of the document is maintained by the editor, so
+     * only the tokens of these statements are visited - if the document has
+     * no active token hierarchy, a copy of the text is lexed.
+     *
+     * @return start and end offset of the statements, the end includes the
+     *         terminating semicolon
+     */
+    private static List<int[]> statementRanges(final Document d, final int startSelection, final int endSelection) throws BadLocationException {
+        final List<int[]> statements = new ArrayList<>();
+        final boolean[] active = new boolean[1];
+        // The token hierarchy of the document may only be used while the
+        // document is locked
+        d.render(new Runnable() {
+            @Override
+            public void run() {
+                TokenSequence ts = TokenHierarchy.get(d).tokenSequence();
+                if (ts != null) {
+                    active[0] = true;
+                    collectStatements(ts, startSelection, endSelection, d.getLength(), statements);
+                }
+            }
+        });
+        if (! active[0]) {
+            TokenSequence ts = TokenHierarchy.create(d.getText(0, d.getLength()), sqlLanguage()).tokenSequence();
+            collectStatements(ts, startSelection, endSelection, d.getLength(), statements);
+        }
+        return statements;
+    }
+    
+    private static void collectStatements(TokenSequence ts, int startSelection, int endSelection,
+            int length, List<int[]> statements) {
+        int statementStart = 0;
+        ts.move(startSelection);
+        while (ts.movePrevious()) {
+            if (isTerminator(ts.token())) {
+                statementStart = ts.offset() + ts.token().length();
+                break;
+            }
+        }
+        
+        ts.move(statementStart);
+        while (ts.moveNext()) {
+            if (isTerminator(ts.token())) {
+                int statementEnd = ts.offset() + ts.token().length();
+                statements.add(new int[] {statementStart, statementEnd});
+                statementStart = statementEnd;
+                if (statementEnd > endSelection) {
+                    return;
+                }
+            }
+        }
+        if (statementStart < length) {
+            statements.add(new int[] {statementStart, length});
+        }
+    }
+    
+    private static boolean isTerminator(Token t) {
+        return SQLTokenId.OPERATOR.matches(t.id()) && ";".equals(t.text().toString());
+    }
+    
+    private static String describe(int start, int end, String reason) {
+        return "[" + start + ", " + end + "): " + reason;
+    }
+    
+    private static void reportSkipped(List<String> skipped) {
+        if (skipped.isEmpty()) {
+            return;
+        }
+        StatusDisplayer.getDefault().setStatusText(NbBundle.getMessage(
+                Formatter.class, "MSG_FormattingSkipped", skipped.size()));
+        Logger.getLogger(Formatter.class.getName()).log(Level.WARNING, "SQL formatting skipped {0} region(s), the text was left unchanged: {1}{2}",
+                new Object[] {
+                    skipped.size(),
+                    skipped.subList(0, Math.min(skipped.size(), MAX_REPORTED_SKIPS)),
+                    skipped.size() > MAX_REPORTED_SKIPS ? " ..." : ""});
+    }
+
     // This is package access scoped to be able to directly test this method
     String formatSQL(List<Token> originalTokenList, int levelSize, boolean expandTabs, int tabSize) {
-        List<Token> tokenList = new ArrayList<>();
+        return formatSQL(originalTokenList, levelSize, expandTabs, tabSize, Long.MAX_VALUE);
+    }
+    
+    /**
+     * @param deadline value of {@link System#nanoTime()} after which
+     *                 formatting is aborted
+     * @return the formatted SQL or {@code null} if the deadline was reached
+     */
+    String formatSQL(List<Token> originalTokenList, int levelSize, boolean expandTabs, int tabSize, long deadline) {
+        return formatTokens(FormatToken.fromLexer(originalTokenList), levelSize, expandTabs, tabSize, deadline);
+    }
+    
+    String formatTokens(List<FormatToken> originalTokenList, int levelSize, boolean expandTabs, int tabSize, long deadline) {
+        boolean limited = deadline != Long.MAX_VALUE;
+        
+        List<FormatToken> tokenList = new ArrayList<>();
         
         Map<Integer,Integer> originalPos = new HashMap<>();
         
         for(int i = 0; i < originalTokenList.size(); i++) {
-            Token t = originalTokenList.get(i);
+            FormatToken t = originalTokenList.get(i);
             if(! SQLTokenId.WHITESPACE.matches(t.id())) {
                 tokenList.add(t);
                 originalPos.put(tokenList.size() - 1, i);
@@ -198,7 +446,11 @@ public class Formatter implements ReformatTask {
         StringBuilder sb = new StringBuilder();
         
         for(int i = 0; i < tokenList.size(); i++) {
-            Token t = tokenList.get(i);
+            if(limited && System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            
+            FormatToken t = tokenList.get(i);
             String tokenText = t.text().toString();
             
             // If we are increasing the special indent level now
@@ -294,7 +546,7 @@ public class Formatter implements ReformatTask {
                         break;
                     }
                     
-                    Token next = tokenList.get(i+j);
+                    FormatToken next = tokenList.get(i+j);
 
                     // Reached closing parentheses, able to inline it
                     if (SQLTokenId.RPAREN.matches(next.id())) {
@@ -474,35 +726,38 @@ public class Formatter implements ReformatTask {
         
         rtrim(sb, ' ');
         
-        Integer end = null;
-        for(int i = sb.length() - 1; i >= 0; i--) {
-            if(end == null && sb.charAt(i) == tab) {
-                end = i;
-            } else if (sb.charAt(i) != tab && end != null) {
-                int start = i + 1;
-                int levels = (end - start + 1) * levelSize;
-                String replacement = IndentUtils.createIndentString(levels, expandTabs, tabSize);
-                sb.replace(start, end + 1, replacement);
-                end = null;
+        // Replace the runs of placeholders with the real indention - the
+        // result is build in a single pass, replacing in place would move
+        // the rest of the text for each run
+        StringBuilder result = new StringBuilder(sb.length() + sb.length() / 4);
+        int length = sb.length();
+        for(int i = 0; i < length;) {
+            char c = sb.charAt(i);
+            if(c != tab) {
+                result.append(c);
+                i++;
+                continue;
             }
-        }
-        if (end != null) {
-            int start = 0;
-            int levels = (end - start + 1) * levelSize;
-            String replacement = IndentUtils.createIndentString(levels, expandTabs, tabSize);
-            sb.replace(start, end + 1, replacement);
+            if(limited && System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            int start = i;
+            while(i < length && sb.charAt(i) == tab) {
+                i++;
+            }
+            result.append(IndentUtils.createIndentString((i - start) * levelSize, expandTabs, tabSize));
         }
         
-        return sb.toString();
+        return result.toString();
     }
 
-    private Integer longestCiMatchIgoreWhitespace(List<Token> ts, int pos, List<List<String>> candidates) {
+    private Integer longestCiMatchIgoreWhitespace(List<FormatToken> ts, int pos, List<List<String>> candidates) {
         // No match after end of list...
         if(pos >= ts.size()) {
             return null;
         }
         int tokenLength = 0;
-        Token t;
+        FormatToken t;
         do {
             t = ts.get(pos);
             pos++;
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2014 Matthias Bläsing <mblaesing@doppel-helix.eu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry point, e.g. for git hooks. Formats the given files (or
+ * stdin) and writes the result to stdout.
+ *
+ * <pre>
+ * Options:
+ *   --write       rewrite the files in place
+ *   --check       only check, exit code 1 if a file is not formatted
+ *   --indent n    width of an indent level (default 4)
+ *   --tabs        indent with tabs
+ * </pre>
+ *
+ * <p>Exit codes: 0 on success, 1 if {@code --check} found unformatted files
+ * and 2 for invalid arguments or files that can't be read or written.</p>
+ *
+ * <p>The text is split by the {@link SQLTokenizer}, so neither the NetBeans
+ * SQL editor module nor the lookup of the SQL language is needed.</p>
+ */
+public class Main {
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    private static final int TAB_SIZE = 8;
+    private static final String USAGE = "Usage: java " + Main.class.getName()
+            + " [--write | --check] [--indent n] [--tabs] [file ...]";
+
+    public static void main(String[] args) throws IOException {
+        boolean write = false;
+        boolean check = false;
+        int indent = 4;
+        boolean expandTabs = true;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--write":
+                    write = true;
+                    break;
+                case "--check":
+                    check = true;
+                    break;
+                case "--indent":
+                    if (i + 1 >= args.length || !args[i + 1].matches("[1-9][0-9]{0,2}")) {
+                        usage("--indent requires a positive number");
+                        return;
+                    }
+                    indent = Integer.parseInt(args[++i]);
+                    break;
+                case "--tabs":
+                    expandTabs = false;
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        usage("Unknown option " + args[i]);
+                        return;
+                    }
+                    files.add(Paths.get(args[i]));
+            }
+        }
+        if (write && check) {
+            usage("--write and --check can't be combined");
+            return;
+        }
+        if (write && files.isEmpty()) {
+            usage("--write requires files");
+            return;
+        }
+
+        Writer out = new OutputStreamWriter(System.out, CHARSET);
+        boolean formatted = true;
+        boolean failed = false;
+
+        if (files.isEmpty()) {
+            String content = new String(readFully(System.in), CHARSET);
+            String result = Formatter.format(content, indent, expandTabs, TAB_SIZE);
+            formatted = result.equals(content);
+            if (!check) {
+                out.write(result);
+            }
+        }
+
+        for (Path file : files) {
+            String content;
+            try {
+                content = new String(Files.readAllBytes(file), CHARSET);
+            } catch (IOException ex) {
+                System.err.println(file + ": " + describe(ex));
+                failed = true;
+                continue;
+            }
+            String result = Formatter.format(content, indent, expandTabs, TAB_SIZE);
+            boolean unchanged = result.equals(content);
+            if (check) {
+                if (!unchanged) {
+                    formatted = false;
+                    System.err.println("Not formatted: " + file);
+                }
+            } else if (write) {
+                if (!unchanged) {
+                    try {
+                        Files.write(file, result.getBytes(CHARSET));
+                    } catch (IOException ex) {
+                        System.err.println(file + ": " + describe(ex));
+                        failed = true;
+                    }
+                }
+            } else {
+                // Formatted files are written as well, stdout has to hold
+                // the complete result
+                out.write(result);
+                out.flush();
+            }
+        }
+        out.flush();
+
+        if (failed) {
+            System.exit(2);
+        } else if (check && !formatted) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The messages of the NIO file exceptions only name the file.
+     */
+    private static String describe(IOException ex) {
+        if (ex instanceof NoSuchFileException) {
+            return "No such file";
+        } else if (ex instanceof AccessDeniedException) {
+            return "Permission denied";
+        }
+        return ex.getMessage() != null ? ex.getMessage() : ex.getClass().getName();
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) > 0) {
+            baos.write(buffer, 0, read);
+        }
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2014 Matthias Bläsing <mblaesing@doppel-helix.eu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter;
+
+/**
+ * Context free SQL normalization for high volume use, e.g. cleaning up
+ * query logs. The SQL is rendered on a single line: comments and
+ * whitespace are dropped, tokens are separated by canonical spacing and
+ * keywords are upper cased. In fingerprint mode string and numeric literals
+ * are replaced by {@code ?}, so that statements only differing in their
+ * parameters get the same 64-bit hash.
+ *
+ * <p>Keywords fall into two groups: clause keywords like {@code SELECT},
+ * {@code AND} or {@code IN} can't end an operand, all other keywords (e.g.
+ * {@code COUNT}, {@code YEAR} or {@code NULL}) are treated like identifiers.
+ * An opening parenthesis directly follows an identifier or a non-clause
+ * keyword ({@code COUNT(*)}) and is separated from a clause keyword
+ * ({@code IN (1, 2)}). A minus at the start or after an operator, an opening
+ * parenthesis, a comma or a clause keyword is a sign and attached to the
+ * following numeric literal, in fingerprint mode it is part of the
+ * placeholder.</p>
+ *
+ * <p>Instances are immutable and thread-safe. Normalization does not
+ * allocate: tokens are scanned with {@link SQLTokenizer#nextToken} and the
+ * result is appended to a builder supplied (and reused) by the caller.</p>
+ */
+public final class SQLNormalizer {
+    /**
+     * Single line form, literals are kept.
+     */
+    public static final SQLNormalizer COMPACT = new SQLNormalizer(false);
+    /**
+     * Single line form, literals are replaced by placeholders.
+     */
+    public static final SQLNormalizer FINGERPRINT = new SQLNormalizer(true);
+
+    // FNV-1a 64-bit
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Keywords, that can't end an operand
+    private static final String[] CLAUSE_KEYWORDS = {
+        "ALL", "AND", "ANY", "AS", "BETWEEN", "BY", "CASE", "DEFAULT",
+        "DISTINCT", "ELSE", "EXCEPT", "EXISTS", "FROM", "HAVING", "IN",
+        "INTERSECT", "INTO", "IS", "JOIN", "LIKE", "LIMIT", "NOT", "OFFSET",
+        "ON", "OR", "RETURN", "SELECT", "SET", "SOME", "THEN", "UNION",
+        "USING", "VALUES", "WHEN", "WHERE"
+    };
+
+    private final boolean replaceLiterals;
+
+    public SQLNormalizer(boolean replaceLiterals) {
+        this.replaceLiterals = replaceLiterals;
+    }
+
+    /**
+     * Append the normalized form of the SQL to {@code out}.
+     *
+     * @param out receives the normalized SQL, may be {@code null} if only
+     *            the hash is of interest
+     * @return 64-bit hash of the normalized SQL
+     */
+    public long normalize(CharSequence sql, StringBuilder out) {
+        boolean bulk = SQLTokenizer.BULK_SCANNING && (sql instanceof String);
+        int length = sql.length();
+        long hash = FNV_OFFSET_BASIS;
+        SQLTokenId previous = null;
+        int previousStart = 0;
+        int previousEnd = 0;
+        int pos = 0;
+        while (pos < length) {
+            long token = SQLTokenizer.nextToken(sql, pos, bulk);
+            SQLTokenId id = SQLTokenizer.tokenId(token);
+            int start = pos;
+            pos = SQLTokenizer.tokenEnd(token);
+
+            if (id == SQLTokenId.WHITESPACE
+                    || id == SQLTokenId.LINE_COMMENT
+                    || id == SQLTokenId.BLOCK_COMMENT) {
+                continue;
+            }
+
+            // Only checked where it matters, the lookup is not free
+            boolean clause = previous == SQLTokenId.KEYWORD
+                    && (id == SQLTokenId.LPAREN || id == SQLTokenId.OPERATOR)
+                    && isClauseKeyword(sql, previousStart, previousEnd);
+
+            if (previous != null && needsSpace(previous, clause, id, sql.charAt(start))) {
+                hash = append(out, hash, ' ');
+            }
+
+            int number = isSignPosition(previous, clause, id, sql, start, pos)
+                    ? numberAfter(sql, pos, bulk) : -1;
+            if (number >= 0) {
+                hash = append(out, hash, replaceLiterals ? '?' : '-');
+                long literal = SQLTokenizer.nextToken(sql, number, bulk);
+                id = SQLTokenizer.tokenId(literal);
+                start = number;
+                pos = SQLTokenizer.tokenEnd(literal);
+                for (int i = number; i < pos && !replaceLiterals; i++) {
+                    hash = append(out, hash, sql.charAt(i));
+                }
+            } else if (replaceLiterals && isLiteral(id)) {
+                hash = append(out, hash, '?');
+            } else if (id == SQLTokenId.KEYWORD) {
+                for (int i = start; i < pos; i++) {
+                    char c = sql.charAt(i);
+                    hash = append(out, hash, (c >= 'a' && c <= 'z') ? (char) (c - ('a' - 'A')) : c);
+                }
+            } else {
+                for (int i = start; i < pos; i++) {
+                    hash = append(out, hash, sql.charAt(i));
+                }
+            }
+
+            previous = id;
+            previousStart = start;
+            previousEnd = pos;
+        }
+        return hash;
+    }
+
+    /**
+     * @return 64-bit hash of the normalized SQL
+     */
+    public long fingerprint(CharSequence sql) {
+        return normalize(sql, null);
+    }
+
+    /**
+     * A minus is a sign, if it can't follow an operand: at the start, after
+     * an operator, an opening parenthesis, a comma or a clause keyword.
+     *
+     * @param clause {@code true} if the previous token is a clause keyword
+     */
+    private static boolean isSignPosition(SQLTokenId previous, boolean clause,
+            SQLTokenId id, CharSequence sql, int start, int end) {
+        if (id != SQLTokenId.OPERATOR || end - start != 1 || sql.charAt(start) != '-') {
+            return false;
+        }
+        return previous == null
+                || previous == SQLTokenId.OPERATOR
+                || previous == SQLTokenId.LPAREN
+                || previous == SQLTokenId.COMMA
+                || clause;
+    }
+
+    private static boolean isClauseKeyword(CharSequence sql, int start, int end) {
+        for (String keyword : CLAUSE_KEYWORDS) {
+            if (keyword.length() == end - start && matchesIgnoreCase(keyword, sql, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesIgnoreCase(String keyword, CharSequence sql, int start) {
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = sql.charAt(start + i);
+            if (keyword.charAt(i) != ((c >= 'a' && c <= 'z') ? (char) (c - ('a' - 'A')) : c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return start of the numeric literal, that follows (after whitespace
+     *         and comments) at {@code pos} or -1 if there is none
+     */
+    private static int numberAfter(CharSequence sql, int pos, boolean bulk) {
+        int length = sql.length();
+        while (pos < length) {
+            long token = SQLTokenizer.nextToken(sql, pos, bulk);
+            SQLTokenId id = SQLTokenizer.tokenId(token);
+            if (id == SQLTokenId.INT_LITERAL || id == SQLTokenId.DOUBLE_LITERAL) {
+                return pos;
+            } else if (id != SQLTokenId.WHITESPACE
+                    && id != SQLTokenId.LINE_COMMENT
+                    && id != SQLTokenId.BLOCK_COMMENT) {
+                return -1;
+            }
+            pos = SQLTokenizer.tokenEnd(token);
+        }
+        return -1;
+    }
+
+    /**
+     * @param clause {@code true} if the previous token is a clause keyword
+     */
+    private static boolean needsSpace(SQLTokenId previous, boolean clause,
+            SQLTokenId next, char firstChar) {
+        if (next == SQLTokenId.COMMA
+                || next == SQLTokenId.DOT
+                || next == SQLTokenId.RPAREN
+                || (next == SQLTokenId.OPERATOR && firstChar == ';')) {
+            return false;
+        }
+        if (previous == SQLTokenId.LPAREN || previous == SQLTokenId.DOT) {
+            return false;
+        }
+        // Function calls, a keyword can be a function name too
+        return ! (next == SQLTokenId.LPAREN
+                && (previous == SQLTokenId.IDENTIFIER
+                || (previous == SQLTokenId.KEYWORD && !clause)));
+    }
+
+    private static boolean isLiteral(SQLTokenId id) {
+        return id == SQLTokenId.STRING
+                || id == SQLTokenId.INCOMPLETE_STRING
+                || id == SQLTokenId.INT_LITERAL
+                || id == SQLTokenId.DOUBLE_LITERAL;
+    }
+
+    private static long append(StringBuilder out, long hash, char c) {
+        if (out != null) {
+            out.append(c);
+        }
+        return (hash ^ c) * FNV_PRIME;
+    }
+}
@@ -66,6 +66,8 @@ public enum SQLTokenId {
     DOUBLE_LITERAL,
     KEYWORD;
 
+    private static final SQLTokenId[] VALUES = values();
+
     private SQLTokenId() {
     }
     
@@ -73,4 +75,21 @@ public enum SQLTokenId {
         return id.name().equals(name());
     }
 
+    public boolean matches(SQLTokenId id) {
+        return this == id;
+    }
+
+    /**
+     * @return the constant with the name of the given id or {@code null} if
+     *         there is none
+     */
+    static SQLTokenId valueOf(TokenId id) {
+        for (SQLTokenId candidate : VALUES) {
+            if (candidate.matches(id)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,492 @@
+/**
+ * Copyright (c) 2014 Matthias Bläsing <mblaesing@doppel-helix.eu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter;
+
+/**
+ * NetBeans independent tokenizer for SQL. It follows the rules of the SQL
+ * lexer of the NetBeans SQL editor and produces the same {@link SQLTokenId}
+ * stream, but works directly on the text and does not create token objects.
+ * The only deviation: a single {@code #} at the end of the text is returned
+ * as an identifier, where the NetBeans lexer fails.
+ *
+ * <p>Runs of uninteresting characters (comment bodies, string literals and
+ * quoted identifiers) are skipped in bulk with {@link String#indexOf(int, int)},
+ * which the JIT compiles to vectorized instructions. The scalar fallback
+ * inspects every character and is used for input that is not a String or
+ * if the system property
+ * {@code eu.doppel_helix.netbeans.sqlformatter.scalarTokenizer} is set.</p>
+ */
+public final class SQLTokenizer {
+    static final boolean BULK_SCANNING = ! Boolean.getBoolean(
+            "eu.doppel_helix.netbeans.sqlformatter.scalarTokenizer");
+
+    private static final SQLTokenId[] IDS = SQLTokenId.values();
+
+    private final CharSequence text;
+    private final boolean bulk;
+    private SQLTokenId id;
+    private int offset;
+    private int end;
+
+    public SQLTokenizer(CharSequence text) {
+        this(text, BULK_SCANNING);
+    }
+
+    SQLTokenizer(CharSequence text, boolean bulk) {
+        this.text = text;
+        this.bulk = bulk && (text instanceof String);
+    }
+
+    /**
+     * Move to the next token.
+     *
+     * @return {@code false} if the end of the text was reached
+     */
+    public boolean moveNext() {
+        if (end >= text.length()) {
+            id = null;
+            return false;
+        }
+        long token = nextToken(text, end, bulk);
+        offset = end;
+        end = tokenEnd(token);
+        id = tokenId(token);
+        return true;
+    }
+
+    public SQLTokenId id() {
+        return id;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return end - offset;
+    }
+
+    public CharSequence text() {
+        return text.subSequence(offset, end);
+    }
+
+    /**
+     * Scan the token starting at {@code offset}. The lexer does not carry
+     * state between tokens, so scanning can start at any token boundary.
+     *
+     * @return id and end offset of the token, packed into a long - use
+     *         {@link #tokenId(long)} and {@link #tokenEnd(long)} to unpack
+     */
+    static long nextToken(CharSequence text, int offset, boolean bulk) {
+        int length = text.length();
+        char c = text.charAt(offset);
+        int pos = offset + 1;
+        char next = pos < length ? text.charAt(pos) : '\uFFFF';
+        switch (c) {
+            case '\'':
+                return quoted(text, pos, '\'', SQLTokenId.STRING, SQLTokenId.INCOMPLETE_STRING, bulk);
+            case '"':
+            case '`':
+                return quoted(text, pos, c, SQLTokenId.IDENTIFIER, SQLTokenId.INCOMPLETE_IDENTIFIER, bulk);
+            case '[':
+                return quoted(text, pos, ']', SQLTokenId.IDENTIFIER, SQLTokenId.INCOMPLETE_IDENTIFIER, bulk);
+            case '#':
+                // A hash followed by whitespace starts a comment, else an
+                // identifier - the character after the hash is part of
+                // either one
+                if (pos >= length) {
+                    return identifier(text, offset, pos);
+                } else if (isWhitespace(next)) {
+                    return lineComment(text, pos + 1, bulk);
+                }
+                return identifier(text, offset, pos + 1);
+            case '-':
+                if (next == '-') {
+                    return lineComment(text, pos + 1, bulk);
+                }
+                return token(SQLTokenId.OPERATOR, next == '=' ? pos + 1 : pos);
+            case '/':
+                if (next == '*') {
+                    return blockComment(text, pos + 1, bulk);
+                }
+                return token(SQLTokenId.OPERATOR, next == '=' ? pos + 1 : pos);
+            case '(':
+                return token(SQLTokenId.LPAREN, pos);
+            case ')':
+                return token(SQLTokenId.RPAREN, pos);
+            case ',':
+                return token(SQLTokenId.COMMA, pos);
+            case '.':
+                if (pos < length && isDigit(next)) {
+                    return token(SQLTokenId.DOUBLE_LITERAL, skipAsciiDigits(text, pos + 1));
+                }
+                return token(SQLTokenId.DOT, pos);
+            case '!':
+            case '%':
+            case '&':
+            case '*':
+            case '+':
+            case ':':
+            case ';':
+            case '<':
+            case '=':
+            case '>':
+            case '^':
+            case '|':
+            case '~':
+                return operator(text, offset, c, next);
+            default:
+                if (isWhitespace(c)) {
+                    while (pos < length && isWhitespace(text.charAt(pos))) {
+                        pos++;
+                    }
+                    return token(SQLTokenId.WHITESPACE, pos);
+                } else if (isDigit(c)) {
+                    while (pos < length && isDigit(text.charAt(pos))) {
+                        pos++;
+                    }
+                    if (pos < length && text.charAt(pos) == '.') {
+                        return token(SQLTokenId.DOUBLE_LITERAL, skipAsciiDigits(text, pos + 1));
+                    }
+                    return token(SQLTokenId.INT_LITERAL, pos);
+                } else {
+                    // Every other character starts an identifier
+                    return identifier(text, offset, pos);
+                }
+        }
+    }
+
+    /**
+     * Two character operators are the comparisons ({@code <>}, {@code !=},
+     * {@code !<}, {@code !>}, {@code <=}, {@code >=}), the concatenation
+     * {@code ||} and the compound assignments. A colon, that does not start
+     * {@code :=}, starts a named parameter, which is an identifier.
+     */
+    private static long operator(CharSequence text, int offset, char c, char next) {
+        int pos = offset + 1;
+        if (next == '=' && c != ';' && c != '=' && c != '~') {
+            return token(SQLTokenId.OPERATOR, pos + 1);
+        } else if ((c == '|' && next == '|')
+                || (c == '!' && (next == '<' || next == '>'))
+                || (c == '<' && next == '>')) {
+            return token(SQLTokenId.OPERATOR, pos + 1);
+        } else if (c == ':') {
+            return identifier(text, offset, pos);
+        }
+        return token(SQLTokenId.OPERATOR, pos);
+    }
+
+    /**
+     * Scan the rest of an unquoted identifier or keyword, that starts at
+     * {@code start} and continues at {@code pos}.
+     */
+    private static long identifier(CharSequence text, int start, int pos) {
+        int length = text.length();
+        while (pos < length && isIdentifierPart(text.charAt(pos))) {
+            pos++;
+        }
+        return token(Keywords.isKeyword(text, start, pos)
+                ? SQLTokenId.KEYWORD : SQLTokenId.IDENTIFIER, pos);
+    }
+
+    static SQLTokenId tokenId(long token) {
+        return IDS[(int) (token >>> 32)];
+    }
+
+    static int tokenEnd(long token) {
+        return (int) token;
+    }
+
+    private static long token(SQLTokenId id, int end) {
+        return (((long) id.ordinal()) << 32) | end;
+    }
+
+    /**
+     * Scan a quoted string or identifier, a doubled quote character is part
+     * of the value.
+     */
+    private static long quoted(CharSequence text, int pos, char quote,
+            SQLTokenId complete, SQLTokenId incomplete, boolean bulk) {
+        int length = text.length();
+        while (true) {
+            int idx = indexOf(text, quote, pos, bulk);
+            if (idx < 0) {
+                return token(incomplete, length);
+            }
+            if (idx + 1 < length && text.charAt(idx + 1) == quote) {
+                pos = idx + 2;
+            } else {
+                return token(complete, idx + 1);
+            }
+        }
+    }
+
+    /**
+     * The line comment includes the terminating line break.
+     */
+    private static long lineComment(CharSequence text, int pos, boolean bulk) {
+        int idx = indexOf(text, '\n', pos, bulk);
+        return token(SQLTokenId.LINE_COMMENT, idx < 0 ? text.length() : idx + 1);
+    }
+
+    /**
+     * An unterminated block comment extends to the end of the text.
+     */
+    private static long blockComment(CharSequence text, int pos, boolean bulk) {
+        int length = text.length();
+        if (bulk) {
+            int idx = ((String) text).indexOf("*/", pos);
+            return token(SQLTokenId.BLOCK_COMMENT, idx < 0 ? length : idx + 2);
+        }
+        for (int i = pos; i + 1 < length; i++) {
+            if (text.charAt(i) == '*' && text.charAt(i + 1) == '/') {
+                return token(SQLTokenId.BLOCK_COMMENT, i + 2);
+            }
+        }
+        return token(SQLTokenId.BLOCK_COMMENT, length);
+    }
+
+    private static int indexOf(CharSequence text, char c, int pos, boolean bulk) {
+        if (bulk) {
+            return ((String) text).indexOf(c, pos);
+        }
+        int length = text.length();
+        for (int i = pos; i < length; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The fraction of a decimal literal only consists of ASCII digits.
+     */
+    private static int skipAsciiDigits(CharSequence text, int pos) {
+        int length = text.length();
+        while (pos < length && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos;
+    }
+
+    // The checks below are equivalent to the Character methods, but answer
+    // ASCII input without the lookup of the character properties
+
+    private static boolean isDigit(char c) {
+        if (c < 128) {
+            return c >= '0' && c <= '9';
+        }
+        return Character.isDigit(c);
+    }
+
+    private static boolean isWhitespace(char c) {
+        if (c <= ' ') {
+            return c == ' ' || (c >= '\t' && c <= '\r') || (c >= '\u001C' && c <= '\u001F');
+        }
+        return c >= 128 && Character.isWhitespace(c);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        if (c < 128) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '_' || c == '#';
+        }
+        return Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * Case insensitive lookup of the SQL keywords, that works on a range of
+     * the text without creating a String for it. The keywords are the SQL 99
+     * reserved and non-reserved words, the list used by the NetBeans lexer
+     * ({@code org.netbeans.modules.db.api.sql.SQLKeywords}).
+     */
+    private static final class Keywords {
+        private static final String[] RESERVED = {
+            "ABSOLUTE", "ACTION", "ADD", "ADMIN", "AFTER", "AGGREGATE",
+            "ALIAS", "ALL", "ALLOCATE", "ALTER", "AND", "ANY", "ARE", "ARRAY",
+            "AS", "ASC", "ASSERTION", "AT", "AUTHORIZATION", "BEFORE", "BEGIN",
+            "BINARY", "BIT", "BLOB", "BOOLEAN", "BOTH", "BREADTH", "BY",
+            "CALL", "CASCADE", "CASCADED", "CASE", "CAST", "CATALOG", "CHAR",
+            "CHARACTER", "CHECK", "CLASS", "CLOB", "CLOSE", "COLLATE",
+            "COLLATION", "COLUMN", "COMMIT", "COMPLETION", "CONDITION",
+            "CONNECT", "CONNECTION", "CONSTRAINT", "CONSTRAINTS",
+            "CONSTRUCTOR", "CONTAINS", "CONTINUE", "CORRESPONDING", "CREATE",
+            "CROSS", "CUBE", "CURRENT", "CURRENT_DATE", "CURRENT_PATH",
+            "CURRENT_ROLE", "CURRENT_TIME", "CURRENT_TIMESTAMP",
+            "CURRENT_USER", "CURSOR", "CYCLE", "DATA", "DATALINK", "DATE",
+            "DAY", "DEALLOCATE", "DEC", "DECIMAL", "DECLARE", "DEFAULT",
+            "DEFERRABLE", "DEFERRED", "DELETE", "DEPTH", "DEREF", "DESC",
+            "DESCRIBE", "DESCRIPTOR", "DESTROY", "DESTRUCTOR", "DETERMINISTIC",
+            "DIAGNOSTICS", "DICTIONARY", "DISCONNECT", "DISTINCT", "DO",
+            "DOMAIN", "DOUBLE", "DROP", "DYNAMIC", "EACH", "ELSE", "ELSEIF",
+            "END", "END-EXEC", "EQUALS", "ESCAPE", "EVERY", "EXCEPT",
+            "EXCEPTION", "EXEC", "EXECUTE", "EXIT", "EXPAND", "EXPANDING",
+            "EXTERNAL", "FALSE", "FETCH", "FIRST", "FLOAT", "FOR", "FOREIGN",
+            "FOUND", "FREE", "FROM", "FULL", "FUNCTION", "GENERAL", "GET",
+            "GLOBAL", "GO", "GOTO", "GRANT", "GROUP", "GROUPING", "HANDLER",
+            "HASH", "HAVING", "HOST", "HOUR", "IDENTITY", "IF", "IGNORE",
+            "IMMEDIATE", "IN", "INDICATOR", "INITIALIZE", "INITIALLY", "INNER",
+            "INOUT", "INPUT", "INSERT", "INT", "INTEGER", "INTERSECT",
+            "INTERVAL", "INTO", "IS", "ISOLATION", "ITERATE", "JOIN", "KEY",
+            "LANGUAGE", "LARGE", "LAST", "LATERAL", "LEADING", "LEAVE", "LEFT",
+            "LESS", "LEVEL", "LIKE", "LIMIT", "LOCAL", "LOCALTIME",
+            "LOCALTIMESTAMP", "LOCATOR", "LOOP", "MATCH", "MEETS", "MINUTE",
+            "MODIFIES", "MODIFY", "MODULE", "MONTH", "NAMES", "NATIONAL",
+            "NATURAL", "NCHAR", "NCLOB", "NEW", "NEXT", "NO", "NONE",
+            "NORMALIZE", "NOT", "NULL", "NUMERIC", "OBJECT", "OF", "OFF",
+            "OLD", "ON", "ONLY", "OPEN", "OPERATION", "OPTION", "OR", "ORDER",
+            "ORDINALITY", "OUT", "OUTER", "OUTPUT", "PAD", "PARAMETER",
+            "PARAMETERS", "PARTIAL", "PATH", "PERIOD", "POSTFIX", "PRECEDES",
+            "PRECISION", "PREFIX", "PREORDER", "PREPARE", "PRESERVE",
+            "PRIMARY", "PRIOR", "PRIVILEGES", "PROCEDURE", "PUBLIC", "READ",
+            "READS", "REAL", "RECURSIVE", "REDO", "REF", "REFERENCES",
+            "REFERENCING", "RELATIVE", "REPEAT", "RESIGNAL", "RESTRICT",
+            "RESULT", "RETURN", "RETURNS", "REVOKE", "RIGHT", "ROLE",
+            "ROLLBACK", "ROLLUP", "ROUTINE", "ROW", "ROWS", "SAVEPOINT",
+            "SCHEMA", "SCROLL", "SEARCH", "SECOND", "SECTION", "SELECT",
+            "SEQUENCE", "SESSION", "SESSION_USER", "SET", "SETS", "SIGNAL",
+            "SIZE", "SMALLINT", "SOME", "SPACE", "SPECIFIC", "SPECIFICTYPE",
+            "SQL", "SQLEXCEPTION", "SQLSTATE", "SQLWARNING", "START", "STATE",
+            "STATEMENT", "STATIC", "STRUCTURE", "SYSTEM_USER", "TABLE",
+            "TEMPORARY", "TERMINATE", "THAN", "THEN", "TIME", "TIMESTAMP",
+            "TIMEZONE_HOUR", "TIMEZONE_MINUTE", "TO", "TRAILING",
+            "TRANSACTION", "TRANSLATION", "TREAT", "TRIGGER", "TRUE", "UNDER",
+            "UNION", "UNIQUE", "UNKNOWN", "UNTIL", "UPDATE", "USAGE", "USER",
+            "USING", "VALUE", "VALUES", "VARCHAR", "VARIABLE", "VARYING",
+            "VIEW", "WHEN", "WHENEVER", "WHERE", "WHILE", "WITH", "WITHOUT",
+            "WORK", "WRITE", "YEAR", "ZONE"
+        };
+
+        private static final String[] NON_RESERVED = {
+            "ABS", "ADA", "ASENSITIVE", "ASSIGNMENT", "ASYMMETRIC", "ATOMIC",
+            "AVG", "BETWEEN", "BITVAR", "BIT_LENGTH", "BLOCKED", "CARDINALITY",
+            "CATALOG_NAME", "CHAIN", "CHARACTER_LENGTH",
+            "CHARACTER_SET_CATALOG", "CHARACTER_SET_NAME",
+            "CHARACTER_SET_SCHEMA", "CHAR_LENGTH", "CHECKED", "CLASS_ORIGIN",
+            "COALESCE", "COBOL", "COLLATION_CATALOG", "COLLATION_NAME",
+            "COLLATION_SCHEMA", "COLUMN_NAME", "COMMAND_FUNCTION",
+            "COMMAND_FUNCTION_CODE", "COMMITTED", "CONCATENATE",
+            "CONDITION_NUMBER", "CONNECTION_NAME", "CONSTRAINT_CATALOG",
+            "CONSTRAINT_NAME", "CONSTRAINT_SCHEMA", "CONTAINS", "CONTROL",
+            "CONVERT", "COUNT", "CURSOR_NAME", "DATABASE",
+            "DATETIME_INTERVAL_CODE", "DATETIME_INTERVAL_PRECISION", "DB",
+            "DELIMITER", "DISPATCH", "DLCOMMENT", "DLFILESIZE",
+            "DLFILESIZEEXACT", "DLLINKTYPE", "DLURLCOMPLETE", "DLURLPATH",
+            "DLURLPATHONLY", "DLURLSCHEMA", "DLURLSERVER", "DLVALUE",
+            "DYNAMIC_FUNCTION", "DYNAMIC_FUNCTION_CODE", "EXISTING", "EXISTS",
+            "EXTRACT", "FILE", "FINAL", "FORTRAN", "GENERATED", "HOLD",
+            "INFIX", "INSENSITIVE", "INSTANTIABLE", "INTEGRITY", "KEY_MEMBER",
+            "KEY_TYPE", "LENGTH", "LINK", "LOWER", "MAX", "MEDIUMINT",
+            "MESSAGE_LENGTH", "MESSAGE_OCTET_LENGTH", "MESSAGE_TEXT", "METHOD",
+            "MIN", "MOD", "MORE", "MUMPS", "NAME", "NULLABLE", "NULLIF",
+            "NUMBER", "OCTET_LENGTH", "OPTIONS", "OVERLAPS", "OVERLAY",
+            "OVERRIDING", "PARAMETER_MODE", "PARAMETER_NAME",
+            "PARAMETER_ORDINAL_POSITION", "PARAMETER_SPECIFIC_CATALOG",
+            "PARAMETER_SPECIFIC_NAME", "PARAMETER_SPECIFIC_SCHEMA", "PASCAL",
+            "PERMISSION", "PLI", "POSITION", "RECOVERY", "REPEATABLE",
+            "REPLACE", "RESTORE", "RETURNED_LENGTH", "RETURNED_OCTET_LENGTH",
+            "RETURNED_SQLSTATE", "ROUTINE_CATALOG", "ROUTINE_NAME",
+            "ROUTINE_SCHEMA", "ROW_COUNT", "ROW_TYPE_CATALOG", "ROW_TYPE_NAME",
+            "ROW_TYPE_SCHEMA", "SCALE", "SCHEMA_NAME", "SELECTIVE", "SELF",
+            "SENSITIVE", "SERIALIZABLE", "SERVER_NAME", "SIMILAR", "SIMPLE",
+            "SOURCE", "SPECIFIC_NAME", "STRUCTURE", "STYLE", "SUBCLASS_ORIGIN",
+            "SUBLIST", "SUBSTRING", "SUM", "SYMMETRIC", "SYSTEM", "TABLE_NAME",
+            "TRANSACTIONS_COMMITTED", "TRANSACTIONS_ROLLED_BACK",
+            "TRANSACTION_ACTIVE", "TRANSFORM", "TRANSLATE", "TRIGGER_CATALOG",
+            "TRIGGER_NAME", "TRIGGER_SCHEMA", "TRIM", "TYPE", "UNCOMMITTED",
+            "UNLINK", "UNNAMED", "UPPER", "USER_DEFINED_TYPE_CATALOG",
+            "USER_DEFINED_TYPE_NAME", "USER_DEFINED_TYPE_SCHEMA", "YES"
+        };
+
+        // Open addressing hash table, sized to at most 25% load
+        private static final char[][] TABLE;
+
+        static {
+            int size = Integer.highestOneBit((RESERVED.length + NON_RESERVED.length) * 4) << 1;
+            TABLE = new char[size][];
+            for (String[] keywords : new String[][] {RESERVED, NON_RESERVED}) {
+                for (String keyword : keywords) {
+                    if (lookup(keyword, 0, keyword.length())) {
+                        // Listed in both groups
+                        continue;
+                    }
+                    char[] chars = keyword.toCharArray();
+                    int slot = hash(keyword, 0, chars.length) & (size - 1);
+                    while (TABLE[slot] != null) {
+                        slot = (slot + 1) & (size - 1);
+                    }
+                    TABLE[slot] = chars;
+                }
+            }
+        }
+
+        static boolean isKeyword(CharSequence text, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (text.charAt(i) >= 128) {
+                    // Upper casing non-ASCII characters can yield ASCII
+                    // characters (U+017F is upper cased to S)
+                    String upper = text.subSequence(start, end).toString().toUpperCase();
+                    return lookup(upper, 0, upper.length());
+                }
+            }
+            return lookup(text, start, end);
+        }
+
+        private static boolean lookup(CharSequence text, int start, int end) {
+            int mask = TABLE.length - 1;
+            int slot = hash(text, start, end) & mask;
+            while (TABLE[slot] != null) {
+                if (matches(TABLE[slot], text, start, end)) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private static int hash(CharSequence text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + upper(text.charAt(i));
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(char[] keyword, CharSequence text, int start, int end) {
+            if (keyword.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < keyword.length; i++) {
+                if (keyword[i] != upper(text.charAt(start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static char upper(char c) {
+            return (c >= 'a' && c <= 'z') ? (char) (c - ('a' - 'A')) : c;
+        }
+    }
+}
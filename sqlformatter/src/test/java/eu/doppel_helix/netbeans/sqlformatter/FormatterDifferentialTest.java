@@ -0,0 +1,410 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 matthias.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+import static junit.framework.Assert.assertEquals;
+import org.junit.Test;
+import org.netbeans.api.lexer.Language;
+import org.netbeans.api.lexer.Token;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenSequence;
+import org.netbeans.junit.NbTestCase;
+
+/**
+ * Randomized differential test: every optimized or parallel engine mode has
+ * to produce exactly the output of the reference algorithm
+ * ({@link Formatter#formatSQL(java.util.List, int, boolean, int)} run
+ * sequentially on the NetBeans lexer tokens). The statement-local strategy
+ * used for large documents has to format each statement exactly as if it was
+ * formatted on its own. In the same way the {@link SQLTokenizer} has to
+ * reproduce the token stream of the NetBeans lexer, which is checked for a
+ * fixed set of inputs too.
+ *
+ * <p>The run is bounded by a time budget and uses a fixed seed, so that a
+ * build is reproducible. Seed and budget can be overridden with the system
+ * properties {@code sqlformatter.difftest.seed} and
+ * {@code sqlformatter.difftest.budget} (milliseconds) to reproduce a failure
+ * or to run a longer session - the seed {@code random} picks a new seed for
+ * each run.</p>
+ */
+public class FormatterDifferentialTest extends NbTestCase {
+
+    private static final long DEFAULT_SEED = 20140601L;
+    private static final int BATCH_SIZE = 64;
+    private static final int MAX_CASES = 20000;
+
+    // Inputs the tokenizer got wrong before
+    private static final String[] TOKENIZER_CASES = {
+        "a <> 1", "a >= 1", "a <= 1", "a != 1", "a !< 1", "a !> 1", "'a' || 'b'",
+        "x := 1", "x += 1", "x -= 1", "x /= 1", "x ;= 1", "x == 1", "x ~= 1", "a<=>b",
+        ":name", ":param2", ":", "a:b", "?", "??", "$col", "@var", "a$b",
+        "#temp", "tmp#1", "#\t", "# comment\nselect", "#\nselect\n1", "##",
+        ".5", "1.5", "1.", "a.b", "1e5", "\u0661\u0662", "1.\u0661",
+        "limit", "Name", "contains", "structure", "größe", "stra\u00dfe",
+        "\"quoted \"\" name\"", "[bracketed]] name]", "`tick`", "[open", "'open",
+        "select 1 -- c\n", "/* open", "a\u00A0b\u2003c"
+    };
+
+    /**
+     * An engine mode under test. Engines work on batches, so that parallel
+     * modes can actually run in parallel.
+     */
+    private interface Engine {
+        String name();
+        List<String> format(List<String> sql) throws Exception;
+    }
+
+    public FormatterDifferentialTest() {
+        super("FormatterDifferential");
+    }
+
+    private static List<Token> tokenSequence(String input) {
+        Language sqlLanguage = org.netbeans.modules.db.sql.lexer.SQLTokenId.language();
+
+        TokenHierarchy th = TokenHierarchy.create(input, sqlLanguage);
+
+        TokenSequence ts = th.tokenSequence();
+
+        List<Token> token = new ArrayList<>(ts.tokenCount());
+
+        while (ts.moveNext()) {
+            token.add(ts.token());
+        }
+
+        return token;
+    }
+
+    private static final Engine FORMATTER_REFERENCE = new SequentialEngine("reference") {
+        @Override
+        String format(String sql) {
+            return new Formatter(null).formatSQL(tokenSequence(sql), 4, true, 8);
+        }
+    };
+
+    /**
+     * Formats each statement on its own and keeps the whitespace between the
+     * statements.
+     */
+    private static final Engine STATEMENT_REFERENCE = new SequentialEngine("statement reference") {
+        @Override
+        String format(String sql) {
+            Formatter formatter = new Formatter(null);
+            List<Token> tokens = tokenSequence(sql);
+            StringBuilder sb = new StringBuilder();
+            int start = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                Token t = tokens.get(i);
+                if (SQLTokenId.OPERATOR.matches(t.id()) && ";".equals(t.text().toString())) {
+                    appendStatement(formatter, sb, tokens.subList(start, i + 1));
+                    start = i + 1;
+                }
+            }
+            appendStatement(formatter, sb, tokens.subList(start, tokens.size()));
+            return sb.toString();
+        }
+
+        private void appendStatement(Formatter formatter, StringBuilder sb, List<Token> tokens) {
+            int first = 0;
+            while (first < tokens.size() && SQLTokenId.WHITESPACE.matches(tokens.get(first).id())) {
+                sb.append(tokens.get(first).text());
+                first++;
+            }
+            if (first == tokens.size()) {
+                return;
+            }
+            int last = tokens.size() - 1;
+            while (SQLTokenId.WHITESPACE.matches(tokens.get(last).id())) {
+                last--;
+            }
+            sb.append(formatter.formatSQL(tokens.subList(first, last + 1), 4, true, 8));
+            for (Token t : tokens.subList(last + 1, tokens.size())) {
+                sb.append(t.text());
+            }
+        }
+    };
+
+    private static final Engine LEXER_REFERENCE = new SequentialEngine("NetBeans lexer") {
+        @Override
+        String format(String sql) {
+            StringBuilder sb = new StringBuilder();
+            for (Token t : tokenSequence(sql)) {
+                sb.append(t.id().name()).append(':').append(t.length()).append(' ');
+            }
+            return sb.toString();
+        }
+    };
+
+    private static List<Engine> formatterEngines() {
+        return Arrays.<Engine>asList(
+                new SequentialEngine("tokenizer") {
+                    @Override
+                    String format(String sql) {
+                        return new Formatter(null).formatTokens(FormatToken.tokenize(sql),
+                                4, true, 8, Long.MAX_VALUE);
+                    }
+                },
+                new Engine() {
+                    @Override
+                    public String name() {
+                        return "parallel";
+                    }
+
+                    @Override
+                    public List<String> format(List<String> sql) throws Exception {
+                        // One shared formatter for all worker threads
+                        final Formatter formatter = new Formatter(null);
+                        ExecutorService executor = Executors.newFixedThreadPool(4);
+                        try {
+                            List<Future<String>> futures = new ArrayList<>(sql.size());
+                            for (final String input : sql) {
+                                futures.add(executor.submit(new Callable<String>() {
+                                    @Override
+                                    public String call() throws Exception {
+                                        return formatter.formatSQL(tokenSequence(input), 4, true, 8);
+                                    }
+                                }));
+                            }
+                            List<String> result = new ArrayList<>(sql.size());
+                            for (Future<String> future : futures) {
+                                result.add(future.get());
+                            }
+                            return result;
+                        } finally {
+                            executor.shutdownNow();
+                        }
+                    }
+                }
+        );
+    }
+
+    private static List<Engine> statementEngines() {
+        return Arrays.<Engine>asList(
+                new SequentialEngine("statement-local") {
+                    @Override
+                    String format(String sql) throws Exception {
+                        Document d = new PlainDocument();
+                        d.putProperty(Language.class, org.netbeans.modules.db.sql.lexer.SQLTokenId.language());
+                        d.insertString(0, sql, null);
+                        long budget = TimeUnit.MINUTES.toNanos(1);
+                        List<String> skipped = new Formatter(null).reformatStatementLocal(
+                                d, 0, d.getLength(), 4, true, 8, budget, budget);
+                        if (! skipped.isEmpty()) {
+                            throw new IllegalStateException("Skipped: " + skipped);
+                        }
+                        return d.getText(0, d.getLength());
+                    }
+                }
+        );
+    }
+
+    private static List<Engine> tokenizerEngines() {
+        return Arrays.<Engine>asList(
+                new TokenizerEngine("bulk tokenizer", true),
+                new TokenizerEngine("scalar tokenizer", false)
+        );
+    }
+
+    @Test
+    public void testEnginesMatchReference() throws Exception {
+        run(FORMATTER_REFERENCE, formatterEngines());
+    }
+
+    @Test
+    public void testStatementLocalMatchesReference() throws Exception {
+        Formatter.sqlLanguage = org.netbeans.modules.db.sql.lexer.SQLTokenId.language();
+        run(STATEMENT_REFERENCE, statementEngines());
+    }
+
+    @Test
+    public void testTokenizerMatchesLexer() throws Exception {
+        run(LEXER_REFERENCE, tokenizerEngines());
+    }
+
+    @Test
+    public void testTokenizerCases() throws Exception {
+        for (String sql : TOKENIZER_CASES) {
+            for (Engine engine : tokenizerEngines()) {
+                assertEquals("Engine '" + engine.name() + "', input: " + sql,
+                        outcome(LEXER_REFERENCE, sql), outcome(engine, sql));
+            }
+        }
+    }
+
+    private void run(Engine reference, List<Engine> engines) throws Exception {
+        long seed = seed();
+        long budget = Long.getLong("sqlformatter.difftest.budget", 3000L);
+        long deadline = System.currentTimeMillis() + budget;
+
+        RandomSQLGenerator generator = new RandomSQLGenerator(seed);
+
+        int cases = 0;
+        while (cases < MAX_CASES && System.currentTimeMillis() < deadline) {
+            List<List<String>> fragments = new ArrayList<>(BATCH_SIZE);
+            List<String> inputs = new ArrayList<>(BATCH_SIZE);
+            List<String> expected = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                List<String> generated = generator.nextCase();
+                fragments.add(generated);
+                inputs.add(RandomSQLGenerator.join(generated));
+                expected.add(outcome(reference, inputs.get(i)));
+            }
+            for (Engine engine : engines) {
+                List<String> actual;
+                try {
+                    actual = engine.format(inputs);
+                } catch (Exception ex) {
+                    // Some input of the batch failed, fall back to single cases
+                    actual = new ArrayList<>(BATCH_SIZE);
+                    for (String input : inputs) {
+                        actual.add(outcome(engine, input));
+                    }
+                }
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    if (!expected.get(i).equals(actual.get(i))) {
+                        String minimal = RandomSQLGenerator.join(shrink(reference, engine, fragments.get(i)));
+                        assertEquals("Engine '" + engine.name() + "' differs from "
+                                + reference.name()
+                                + " (seed " + seed + ", case " + (cases + i) + ")"
+                                + " - minimal input:\n" + minimal + "\n",
+                                outcome(reference, minimal),
+                                outcome(engine, minimal));
+                    }
+                }
+            }
+            cases += BATCH_SIZE;
+        }
+    }
+
+    private static long seed() {
+        String seed = System.getProperty("sqlformatter.difftest.seed");
+        if (seed == null) {
+            return DEFAULT_SEED;
+        } else if ("random".equals(seed)) {
+            return System.currentTimeMillis();
+        }
+        return Long.parseLong(seed);
+    }
+
+    /**
+     * Run the input through the given engine - exceptions are part of the
+     * observable behaviour and are compared too.
+     */
+    private static String outcome(Engine engine, String sql) {
+        try {
+            return engine.format(Collections.singletonList(sql)).get(0);
+        } catch (ExecutionException ex) {
+            return "<" + ex.getCause().getClass().getName() + ">";
+        } catch (Exception | StackOverflowError ex) {
+            return "<" + ex.getClass().getName() + ">";
+        }
+    }
+
+    /**
+     * Reduce the failing input by removing chunks of fragments as long as the
+     * engine still disagrees with the reference.
+     */
+    private static List<String> shrink(Engine reference, Engine engine, List<String> fragments) {
+        List<String> current = fragments;
+        int chunk = Math.max(1, current.size() / 2);
+        while (chunk >= 1) {
+            boolean removed = false;
+            for (int start = 0; start < current.size();) {
+                List<String> candidate = new ArrayList<>(current.size());
+                candidate.addAll(current.subList(0, start));
+                candidate.addAll(current.subList(Math.min(current.size(), start + chunk), current.size()));
+                String sql = RandomSQLGenerator.join(candidate);
+                if ((!candidate.isEmpty()) && !outcome(reference, sql).equals(outcome(engine, sql))) {
+                    current = candidate;
+                    removed = true;
+                } else {
+                    start += chunk;
+                }
+            }
+            if (!removed) {
+                chunk /= 2;
+            }
+        }
+        return current;
+    }
+
+    private abstract static class SequentialEngine implements Engine {
+        private final String name;
+
+        SequentialEngine(String name) {
+            this.name = name;
+        }
+
+        abstract String format(String sql) throws Exception;
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public List<String> format(List<String> sql) throws Exception {
+            List<String> result = new ArrayList<>(sql.size());
+            for (String input : sql) {
+                result.add(format(input));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Renders the token stream of the standalone tokenizer in the same way
+     * as {@link #LEXER_REFERENCE} renders the NetBeans lexer tokens.
+     */
+    private static class TokenizerEngine extends SequentialEngine {
+        private final boolean bulk;
+
+        TokenizerEngine(String name, boolean bulk) {
+            super(name);
+            this.bulk = bulk;
+        }
+
+        @Override
+        String format(String sql) {
+            StringBuilder sb = new StringBuilder();
+            SQLTokenizer t = new SQLTokenizer(sql, bulk);
+            while (t.moveNext()) {
+                sb.append(t.id().name()).append(':').append(t.length()).append(' ');
+            }
+            return sb.toString();
+        }
+    }
+}
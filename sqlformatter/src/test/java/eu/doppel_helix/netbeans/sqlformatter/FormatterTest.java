@@ -30,9 +30,13 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import org.junit.Test;
 import org.netbeans.api.lexer.Language;
 import org.netbeans.api.lexer.Token;
@@ -143,4 +147,80 @@ public class FormatterTest extends NbTestCase {
             assertEquals("SQL Comparison failed [" + i + "]", referenceSql[i], reformatted);
         }
     }
+    
+    @Test
+    public void testStatementLocalReformat() throws BadLocationException {
+        Formatter.sqlLanguage = org.netbeans.modules.db.sql.lexer.SQLTokenId.language();
+        Formatter f = new Formatter(null);
+        String first = "select a from b;\n";
+        String second = "select   x,y from z where x = 1;\n";
+        String third = "select c from d;";
+        long budget = TimeUnit.MINUTES.toNanos(1);
+        // Only the statement containing the selection may be touched
+        Document d = new PlainDocument();
+        d.insertString(0, first + second + third, null);
+        int selection = first.length() + 3;
+        List<String> skipped = f.reformatStatementLocal(d, selection, selection, 4, true, 8, budget, budget);
+        assertTrue(skipped.isEmpty());
+        assertEquals(first + f.formatSQL(tokenSequence(second.trim()), 4, true, 8) + "\n" + third,
+                d.getText(0, d.getLength()));
+        // Selecting the whole document formats all statements separately
+        d = new PlainDocument();
+        d.insertString(0, first + second + third, null);
+        skipped = f.reformatStatementLocal(d, 0, d.getLength(), 4, true, 8, budget, budget);
+        assertTrue(skipped.isEmpty());
+        assertEquals(f.formatSQL(tokenSequence(first.trim()), 4, true, 8) + "\n"
+                + f.formatSQL(tokenSequence(second.trim()), 4, true, 8) + "\n"
+                + f.formatSQL(tokenSequence(third), 4, true, 8),
+                d.getText(0, d.getLength()));
+    }
+    
+    @Test
+    public void testStatementLocalBoundaries() throws BadLocationException {
+        Formatter.sqlLanguage = org.netbeans.modules.db.sql.lexer.SQLTokenId.language();
+        Formatter f = new Formatter(null);
+        // Semicolons in comments and literals don't end a statement
+        String first = "/* note;\n old */ select  1;\n";
+        String second = "select 'a;\nb';\n";
+        long budget = TimeUnit.MINUTES.toNanos(1);
+        Document d = new PlainDocument();
+        d.putProperty(Language.class, org.netbeans.modules.db.sql.lexer.SQLTokenId.language());
+        d.insertString(0, first + second, null);
+        int selection = first.indexOf("select");
+        List<String> skipped = f.reformatStatementLocal(d, selection, selection, 4, true, 8, budget, budget);
+        assertTrue(skipped.isEmpty());
+        assertEquals(f.formatSQL(tokenSequence(first.trim()), 4, true, 8) + "\n" + second,
+                d.getText(0, d.getLength()));
+        selection = d.getLength() - 3;
+        skipped = f.reformatStatementLocal(d, selection, selection, 4, true, 8, budget, budget);
+        assertTrue(skipped.isEmpty());
+        assertEquals(f.formatSQL(tokenSequence(first.trim()), 4, true, 8) + "\n"
+                + f.formatSQL(tokenSequence(second.trim()), 4, true, 8) + "\n",
+                d.getText(0, d.getLength()));
+    }
+    
+    @Test
+    public void testFileContent() {
+        String sql = "select a from t where b <> 1";
+        String formatted = new Formatter(null).formatSQL(tokenSequence(sql), 4, true, 8);
+        assertEquals(formatted, Formatter.format(sql, 4, true, 8));
+        // Blank files stay untouched, the final line break is kept
+        assertEquals(" \n\t\n", Formatter.format(" \n\t\n", 4, true, 8));
+        assertEquals(formatted + "\n", Formatter.format(sql + "\n", 4, true, 8));
+        assertEquals(formatted + "\r\n", Formatter.format(sql + "\r\n", 4, true, 8));
+    }
+
+    @Test
+    public void testStatementTimeBudget() throws BadLocationException {
+        Formatter.sqlLanguage = org.netbeans.modules.db.sql.lexer.SQLTokenId.language();
+        Formatter f = new Formatter(null);
+        String sql = "select a from b;\nselect   x,y from z where x = 1;\n";
+        Document d = new PlainDocument();
+        d.insertString(0, sql, null);
+        // An exhausted budget leaves the document unchanged and reports the statements
+        List<String> skipped = f.reformatStatementLocal(d, 0, d.getLength(), 4, true, 8, 0, TimeUnit.MINUTES.toNanos(1));
+        assertEquals(2, skipped.size());
+        assertEquals(sql, d.getText(0, d.getLength()));
+        assertEquals(null, f.formatSQL(tokenSequence(sql), 4, true, 8, System.nanoTime()));
+    }
 }
@@ -0,0 +1,371 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 matthias.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random SQL from a small grammar. The result is a list of
+ * fragments (a lexeme including its trailing whitespace), so that failing
+ * inputs can be shrunk by dropping fragments.
+ *
+ * <p>Besides valid statements the grammar covers the lexically interesting
+ * cases: all kinds of quoted identifiers, comments and literals containing
+ * statement separators, non-ASCII text and unterminated literals or comments
+ * at the end of the input.</p>
+ */
+class RandomSQLGenerator {
+    private static final String[] IDENTIFIERS = {"id", "name", "customer_id",
+        "orders", "customers", "`quoted`", "total", "a", "b", "t1",
+        "\"Quoted Name\"", "\"with \"\"quote\"\"\"", "[bracketed]",
+        "[with ]] bracket]", "größe", "名前", "#temp", "tmp#1", "$col",
+        "limit", "Value"};
+    private static final String[] FUNCTIONS = {"COUNT", "NOW", "MAX", "coalesce",
+        "int", "DECIMAL"};
+    private static final String[] JOINS = {"JOIN", "LEFT JOIN", "RIGHT JOIN",
+        "INNER JOIN", "OUTER JOIN", "LEFT OUTER JOIN", "RIGHT OUTER JOIN"};
+    private static final String[] OPERATORS = {"=", "<>", "<", ">=", "<=",
+        "!=", "!<", "+", "-", "*", "/", "%", "||", "&", "|", "^", "LIKE",
+        "NOT LIKE", "IS NOT"};
+    private static final String[] CONNECTIVES = {"AND", "OR", "XOR"};
+    private static final String[] WHITESPACE = {" ", " ", " ", "  ", "\n",
+        "\t", "\n    ", "\r\n", "\u00A0", "\u2003"};
+    private static final String[] COMMENTS = {"-- comment\n",
+        "-- comment; with separator\n", "--\n", "# hash comment\n",
+        "#\tcomment;\n", "/* block */ ", "/* block; */ ", "/* multi\n   line */\n",
+        "/* note;\n   old */\n", "/** doc **/ ", "/* Grüße */ "};
+    private static final String[] UNTERMINATED = {"'unterminated",
+        "'unterminated;\n next", "\"unterminated", "[unterminated",
+        "`unterminated", "/* unterminated", "/* unterminated;\n", "-- final",
+        "# final"};
+
+    private static final int MAX_DEPTH = 3;
+
+    private final Random random;
+    private List<String> fragments;
+    private int depth;
+
+    RandomSQLGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    List<String> nextCase() {
+        fragments = new ArrayList<>();
+        depth = 0;
+        int statements = 1 + random.nextInt(3);
+        for (int i = 0; i < statements; i++) {
+            statement();
+            if (i < statements - 1 || random.nextBoolean()) {
+                emit(";");
+            }
+        }
+        if (random.nextInt(10) == 0) {
+            fragments.add(pick(UNTERMINATED));
+        }
+        return fragments;
+    }
+
+    static String join(List<String> fragments) {
+        StringBuilder sb = new StringBuilder();
+        for (String fragment : fragments) {
+            sb.append(fragment);
+        }
+        return sb.toString();
+    }
+
+    private void statement() {
+        switch (random.nextInt(5)) {
+            case 0:
+                emit(keyword("UPDATE"));
+                identifier();
+                emit(keyword("SET"));
+                identifier();
+                emit("=");
+                operand();
+                where();
+                break;
+            case 1:
+                emit(keyword("DELETE"));
+                emit(keyword("FROM"));
+                identifier();
+                where();
+                break;
+            case 2:
+                emit(keyword("INSERT"));
+                emit(keyword("INTO"));
+                identifier();
+                emit(keyword("VALUES"));
+                emit("(");
+                list(3);
+                emit(")");
+                break;
+            default:
+                select();
+        }
+    }
+
+    private void select() {
+        depth++;
+        emit(keyword("SELECT"));
+        if (random.nextInt(5) == 0) {
+            emit(keyword("DISTINCT"));
+        }
+        int columns = 1 + random.nextInt(4);
+        for (int i = 0; i < columns; i++) {
+            if (i > 0) {
+                emit(",");
+            }
+            column();
+        }
+        emit(keyword("FROM"));
+        tableReference();
+        int joins = random.nextInt(3);
+        for (int i = 0; i < joins; i++) {
+            for (String part : pick(JOINS).split(" ")) {
+                emit(keyword(part));
+            }
+            tableReference();
+            emit(keyword("ON"));
+            condition();
+        }
+        where();
+        if (random.nextInt(3) == 0) {
+            emit(keyword("GROUP"));
+            emit(keyword("BY"));
+            list(2);
+            if (random.nextBoolean()) {
+                emit(keyword("HAVING"));
+                condition();
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            emit(keyword("ORDER"));
+            emit(keyword("BY"));
+            list(2);
+            if (random.nextBoolean()) {
+                emit(keyword(random.nextBoolean() ? "ASC" : "DESC"));
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            emit(keyword("LIMIT"));
+            emit(Integer.toString(random.nextInt(100)));
+            if (random.nextBoolean()) {
+                emit(",");
+                emit(Integer.toString(random.nextInt(100)));
+            }
+        }
+        depth--;
+    }
+
+    private void where() {
+        if (random.nextBoolean()) {
+            emit(keyword("WHERE"));
+            condition();
+        }
+    }
+
+    private void tableReference() {
+        if (depth < MAX_DEPTH && random.nextInt(4) == 0) {
+            emit("(");
+            select();
+            emit(")");
+            emit(keyword("AS"));
+        }
+        identifier();
+    }
+
+    private void column() {
+        switch (random.nextInt(6)) {
+            case 0:
+                emit("*");
+                break;
+            case 1:
+                identifier();
+                emit(".");
+                identifier();
+                break;
+            case 2:
+                function();
+                break;
+            case 3:
+                literal();
+                break;
+            case 4:
+                if (depth < MAX_DEPTH) {
+                    emit("(");
+                    select();
+                    emit(")");
+                    break;
+                }
+                // fall through
+            default:
+                identifier();
+        }
+        if (random.nextInt(4) == 0) {
+            emit(keyword("AS"));
+            identifier();
+        }
+    }
+
+    private void function() {
+        emit(pick(FUNCTIONS));
+        // No whitespace between function name and parenthesis
+        int last = fragments.size() - 1;
+        fragments.set(last, fragments.get(last).trim());
+        emit("(");
+        if (random.nextBoolean()) {
+            list(1 + random.nextInt(4));
+        } else if (random.nextBoolean()) {
+            emit("*");
+        }
+        emit(")");
+    }
+
+    private void condition() {
+        int predicates = 1 + random.nextInt(3);
+        for (int i = 0; i < predicates; i++) {
+            if (i > 0) {
+                emit(keyword(pick(CONNECTIVES)));
+            }
+            switch (random.nextInt(4)) {
+                case 0:
+                    if (depth < MAX_DEPTH) {
+                        emit("(");
+                        condition();
+                        emit(")");
+                        break;
+                    }
+                    // fall through
+                case 1:
+                    operand();
+                    emit(keyword("IN"));
+                    emit("(");
+                    if (depth < MAX_DEPTH && random.nextBoolean()) {
+                        select();
+                    } else {
+                        list(1 + random.nextInt(5));
+                    }
+                    emit(")");
+                    break;
+                default:
+                    operand();
+                    for (String part : pick(OPERATORS).split(" ")) {
+                        emit(keyword(part));
+                    }
+                    operand();
+            }
+        }
+    }
+
+    private void list(int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                emit(",");
+            }
+            operand();
+        }
+    }
+
+    private void operand() {
+        switch (random.nextInt(8)) {
+            case 0:
+                emit("?");
+                break;
+            case 1:
+                emit(":param" + random.nextInt(3));
+                break;
+            case 2:
+            case 3:
+            case 4:
+                literal();
+                break;
+            default:
+                identifier();
+        }
+    }
+
+    private void identifier() {
+        emit(pick(IDENTIFIERS));
+    }
+
+    private void literal() {
+        switch (random.nextInt(8)) {
+            case 0:
+                emit(Integer.toString(random.nextInt(100000)));
+                break;
+            case 1:
+                emit(random.nextInt(1000) + "." + random.nextInt(1000));
+                break;
+            case 2:
+                emit("'it''s " + random.nextInt(10) + "'");
+                break;
+            case 3:
+                emit("." + random.nextInt(1000));
+                break;
+            case 4:
+                emit("-" + random.nextInt(100));
+                break;
+            case 5:
+                emit(random.nextBoolean() ? "'a;\nb'" : "'Grüße; €'");
+                break;
+            default:
+                StringBuilder sb = new StringBuilder("'");
+                int length = random.nextInt(60);
+                for (int i = 0; i < length; i++) {
+                    sb.append((char) ('a' + random.nextInt(26)));
+                }
+                sb.append("'");
+                emit(sb.toString());
+        }
+    }
+
+    private void emit(String lexeme) {
+        // Interleave comments and unbalanced parentheses at low rates
+        switch (random.nextInt(40)) {
+            case 0:
+            case 1:
+            case 2:
+                fragments.add(pick(COMMENTS));
+                break;
+            case 3:
+                fragments.add("( ");
+                break;
+            case 4:
+                fragments.add(") ");
+                break;
+        }
+        fragments.add(lexeme + pick(WHITESPACE));
+    }
+
+    private String keyword(String keyword) {
+        return random.nextInt(4) == 0 ? keyword.toLowerCase() : keyword;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 matthias.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+
+public class SQLNormalizerTest extends NbTestCase {
+
+    public SQLNormalizerTest() {
+        super("SQLNormalizer");
+    }
+
+    private static String normalize(SQLNormalizer normalizer, CharSequence sql) {
+        StringBuilder sb = new StringBuilder();
+        long hash = normalizer.normalize(sql, sb);
+        assertEquals(hash, normalizer.fingerprint(sql));
+        return sb.toString();
+    }
+
+    @Test
+    public void testCompact() {
+        assertEquals("SELECT a, b.c, COUNT(*) FROM t WHERE x = 1 AND y IN (1, 'it''s');",
+                normalize(SQLNormalizer.COMPACT,
+                "select a ,b . c,\n  count( * ) -- comment\nFROM t /* block */ where x=1\n\tand y in ( 1,'it''s' ) ;"));
+        // Function names are directly followed by parentheses, no matter
+        // whether they are keywords, clause keywords are not
+        assertEquals("SELECT my_func(a, 2.5), UPPER(b), MAX(c) FROM t WHERE EXISTS (SELECT 1) AND d IN (1)",
+                normalize(SQLNormalizer.COMPACT,
+                "SELECT my_func (a,2.5), upper (b), max(c)\nFROM t where exists(select 1) and d in(1)"));
+    }
+
+    @Test
+    public void testFingerprint() {
+        String first = "SELECT * FROM orders WHERE id = 42 AND code = 'x' LIMIT 10";
+        String second = "select *\n  from orders\n where id=7 and code='other' LIMIT 1.5";
+        assertEquals("SELECT * FROM orders WHERE id = ? AND code = ? LIMIT ?",
+                normalize(SQLNormalizer.FINGERPRINT, first));
+        assertEquals(SQLNormalizer.FINGERPRINT.fingerprint(first),
+                SQLNormalizer.FINGERPRINT.fingerprint(second));
+        // Identifiers are part of the fingerprint
+        assertTrue(SQLNormalizer.FINGERPRINT.fingerprint(first)
+                != SQLNormalizer.FINGERPRINT.fingerprint("SELECT * FROM customers WHERE id = 42 AND code = 'x' LIMIT 10"));
+        // The compact mode keeps literals
+        assertTrue(SQLNormalizer.COMPACT.fingerprint(first)
+                != SQLNormalizer.COMPACT.fingerprint(second));
+    }
+
+    @Test
+    public void testOperators() {
+        assertEquals("SELECT a || ? FROM t WHERE a <> ? AND b >= ? OR c != ? OR d <= :d",
+                normalize(SQLNormalizer.FINGERPRINT,
+                "select a||'x' from t where a<>1 and b>=2 or c!=3 or d<=:d"));
+        assertEquals("SET x := 1 WHERE a !< b",
+                normalize(SQLNormalizer.COMPACT, "set x:=1 where a!<b"));
+    }
+
+    @Test
+    public void testNegativeLiterals() {
+        assertEquals("SELECT ? FROM t WHERE a = ? AND b IN (?, ?) AND c - ? > ?",
+                normalize(SQLNormalizer.FINGERPRINT,
+                "select -1 from t where a = - 2 and b in (-3,-/* c */4.5) and c -1 > -.5"));
+        assertEquals(SQLNormalizer.FINGERPRINT.fingerprint("select * from t where a = -1"),
+                SQLNormalizer.FINGERPRINT.fingerprint("select * from t where a = 1"));
+        // The compact mode attaches the sign to the literal
+        assertEquals("SELECT -1, a - 1, (-2.5) FROM t",
+                normalize(SQLNormalizer.COMPACT, "select - 1, a-1, ( -2.5) from t"));
+        // Keywords can be operands, the minus is a subtraction then
+        assertEquals("SELECT YEAR - 1 FROM t",
+                normalize(SQLNormalizer.COMPACT, "select year - 1 from t"));
+        assertEquals("SELECT YEAR - ? FROM t",
+                normalize(SQLNormalizer.FINGERPRINT, "select year - 1 from t"));
+        assertEquals("SELECT CURRENT_DATE - ?, NULL - ?, CASE WHEN a THEN ? ELSE ? END - ?",
+                normalize(SQLNormalizer.FINGERPRINT,
+                "select current_date - 7, null -1, case when a then -1 else - 2 end - 1"));
+        assertEquals("WHERE x BETWEEN -1 AND -2 LIMIT -1",
+                normalize(SQLNormalizer.COMPACT, "where x between -1 and - 2 limit -1"));
+    }
+
+    @Test
+    public void testScalarInput() {
+        // Non-String input is scanned by the scalar path
+        String sql = "select 'a long literal' /* and a comment */ from t";
+        assertEquals(normalize(SQLNormalizer.FINGERPRINT, sql),
+                normalize(SQLNormalizer.FINGERPRINT, new StringBuilder(sql)));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 matthias.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter;
+
+import java.util.Locale;
+
+/**
+ * Compares the bulk scanning path of {@link SQLTokenizer} with the scalar
+ * fallback on a generated SQL dump. Run it with a warmed up JIT, e.g.:
+ *
+ * <pre>java -cp target/classes:target/test-classes eu.doppel_helix.netbeans.sqlformatter.SQLTokenizerBenchmark [size in MB]</pre>
+ */
+public class SQLTokenizerBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        String dump = createDump(megabytes * 1024 * 1024);
+
+        long bulkChecksum = 0;
+        long scalarChecksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            bulkChecksum = scan(dump, true);
+            long bulkTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            scalarChecksum = scan(dump, false);
+            long scalarTime = System.nanoTime() - start;
+            System.out.println(String.format(Locale.ROOT,
+                    "round %2d: bulk %8.1f MB/s, scalar %8.1f MB/s",
+                    round, throughput(dump, bulkTime), throughput(dump, scalarTime)));
+        }
+        if (bulkChecksum != scalarChecksum) {
+            throw new AssertionError("Token streams of bulk and scalar scanning differ");
+        }
+    }
+
+    /**
+     * Mix of generated statements with long string literals and comments,
+     * as found in data dumps.
+     */
+    private static String createDump(int size) {
+        RandomSQLGenerator generator = new RandomSQLGenerator(42);
+        StringBuilder sb = new StringBuilder(size + 4096);
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            filler.append((char) ('a' + (i % 26)));
+        }
+        int statement = 0;
+        while (sb.length() < size) {
+            sb.append(RandomSQLGenerator.join(generator.nextCase())).append(";\n");
+            if (statement % 4 == 0) {
+                sb.append("INSERT INTO blobs VALUES (").append(statement)
+                        .append(", '").append(filler).append("');\n");
+            }
+            if (statement % 16 == 0) {
+                sb.append("/* ").append(filler).append("\n   ").append(filler).append(" */\n");
+            }
+            statement++;
+        }
+        return sb.toString();
+    }
+
+    private static long scan(String text, boolean bulk) {
+        SQLTokenizer tokenizer = new SQLTokenizer(text, bulk);
+        long checksum = 0;
+        while (tokenizer.moveNext()) {
+            checksum = 31 * checksum + tokenizer.id().ordinal() * 65599L + tokenizer.offset();
+        }
+        return checksum;
+    }
+
+    private static double throughput(String text, long nanos) {
+        return (text.length() / (1024d * 1024d)) / (nanos / 1e9d);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 matthias.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.doppel_helix.netbeans.sqlformatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the startup of the command line formatter: the time from
+ * launching the JVM until the formatted file starts to arrive on stdout
+ * (the file is formatted as a whole before it is written), with and
+ * without the application class-data-sharing archive created by the
+ * {@code appcds} profile. After {@code mvn -Pappcds package} run:
+ *
+ * <pre>java -cp target/test-classes eu.doppel_helix.netbeans.sqlformatter.StartupBenchmark [runs]</pre>
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        String argumentFile = "target/sqlformatter-cli.args";
+        String archive = "target/sqlformatter-cli.jsa";
+        String input = "src/test/resources/eu/doppel_helix/netbeans/sqlformatter/input.sql";
+        if (!new File(archive).isFile()) {
+            throw new IllegalStateException("Archive " + archive + " not found, run: mvn -Pappcds package");
+        }
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> plain = Arrays.asList(java, "@" + argumentFile, Main.class.getName(), input);
+        List<String> appcds = Arrays.asList(java, "-XX:SharedArchiveFile=" + archive,
+                "@" + argumentFile, Main.class.getName(), input);
+
+        // Warm up the file system cache
+        measure(plain);
+        measure(appcds);
+
+        long[][] plainTimes = new long[runs][];
+        long[][] appcdsTimes = new long[runs][];
+        for (int i = 0; i < runs; i++) {
+            plainTimes[i] = measure(plain);
+            appcdsTimes[i] = measure(appcds);
+        }
+        report("default CDS", plainTimes);
+        report("AppCDS", appcdsTimes);
+    }
+
+    /**
+     * @return time to the first output and time to exit in nanoseconds
+     */
+    private static long[] measure(List<String> command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        long firstOutput = -1;
+        try (InputStream is = process.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                if (read > 0 && firstOutput < 0) {
+                    firstOutput = System.nanoTime() - start;
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        long exit = System.nanoTime() - start;
+        if (exitCode != 0 || firstOutput < 0) {
+            throw new IllegalStateException("Formatter failed: " + command);
+        }
+        return new long[]{firstOutput, exit};
+    }
+
+    private static void report(String name, long[][] times) {
+        System.out.println(String.format(Locale.ROOT,
+                "%-12s formatted file: %6.1f ms (median), exit: %6.1f ms (median)",
+                name, median(times, 0) / 1e6, median(times, 1) / 1e6));
+    }
+
+    private static long median(long[][] times, int column) {
+        List<Long> values = new ArrayList<>(times.length);
+        for (long[] time : times) {
+            values.add(time[column]);
+        }
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+}